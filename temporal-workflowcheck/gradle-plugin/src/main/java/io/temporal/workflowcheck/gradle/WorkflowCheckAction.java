@@ -0,0 +1,90 @@
+package io.temporal.workflowcheck.gradle;
+
+import io.temporal.workflowcheck.Main;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+/**
+ * Runs a check in the worker process. Since worker processes are reused, parsed
+ * classes kept in memory by one check are available to the next.
+ */
+public abstract class WorkflowCheckAction implements WorkAction<WorkflowCheckAction.Params> {
+  /** Parameters for the action. */
+  public interface Params extends WorkParameters {
+    ConfigurableFileCollection getClasspath();
+
+    ConfigurableFileCollection getScanClasspath();
+
+    ConfigurableFileCollection getConfigFiles();
+
+    Property<Boolean> getDefaultConfig();
+
+    Property<Boolean> getShowValid();
+
+    Property<Boolean> getIgnoreFailures();
+
+    Property<Integer> getThreads();
+
+    DirectoryProperty getCacheDirectory();
+
+    Property<Integer> getMemoryCacheMb();
+
+    RegularFileProperty getReportFile();
+  }
+
+  @Override
+  public void execute() {
+    var params = getParameters();
+    var args = new ArrayList<String>();
+    args.add(params.getClasspath().getAsPath());
+    if (!params.getScanClasspath().isEmpty()) {
+      args.add("--scan");
+      args.add(params.getScanClasspath().getAsPath());
+    }
+    for (var configFile : params.getConfigFiles()) {
+      args.add("--config");
+      args.add(configFile.getAbsolutePath());
+    }
+    if (!params.getDefaultConfig().get()) {
+      args.add("--no-default-config");
+    }
+    if (params.getShowValid().get()) {
+      args.add("--show-valid");
+    }
+    args.add("--threads");
+    args.add(params.getThreads().get().toString());
+    args.add("--cache-dir");
+    args.add(params.getCacheDirectory().get().getAsFile().getAbsolutePath());
+    args.add("--memory-cache-mb");
+    args.add(params.getMemoryCacheMb().get().toString());
+
+    var reportFile = params.getReportFile().get().getAsFile().toPath();
+    var report = new ByteArrayOutputStream();
+    int exitCode;
+    try {
+      exitCode = Main.check(args.toArray(new String[0]),
+              new PrintStream(report, true, StandardCharsets.UTF_8), System.err);
+      Files.createDirectories(reportFile.getParent());
+      Files.write(reportFile, report.toByteArray());
+    } catch (IOException e) {
+      throw new GradleException("Workflow check failed", e);
+    }
+    // Also show the report in the build output like the check command does
+    System.out.print(report.toString(StandardCharsets.UTF_8));
+    if (exitCode != 0 && !params.getIgnoreFailures().get()) {
+      throw new GradleException("Workflow check failed, see the report at " + reportFile);
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package io.temporal.workflowcheck.gradle;
+
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+/**
+ * Service shared by every workflowcheck task in a build. The parsed classes of
+ * the JDK and of dependencies common to multiple projects are cached in its
+ * directory, and kept in memory by the worker processes that run the tasks, so
+ * they are only parsed once.
+ */
+public abstract class WorkflowCheckBuildService implements BuildService<WorkflowCheckBuildService.Params> {
+  /** Parameters for the service. */
+  public interface Params extends BuildServiceParameters {
+    /** Directory parsed classes are cached in. */
+    DirectoryProperty getCacheDirectory();
+
+    /** Max megabytes of parsed classes each worker process keeps in memory. */
+    Property<Integer> getMemoryCacheMb();
+  }
+}
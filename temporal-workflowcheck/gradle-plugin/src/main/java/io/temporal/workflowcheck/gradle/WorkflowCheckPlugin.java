@@ -0,0 +1,77 @@
+package io.temporal.workflowcheck.gradle;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.Plugin;
+import org.gradle.api.Project;
+import org.gradle.api.plugins.JavaBasePlugin;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.SourceSetContainer;
+import org.gradle.jvm.toolchain.JavaLanguageVersion;
+import org.gradle.jvm.toolchain.JavaToolchainService;
+import org.gradle.language.base.plugins.LifecycleBasePlugin;
+
+/**
+ * Plugin that adds a {@value #TASK_NAME} task checking the main runtime
+ * classpath of Java projects, run as part of the check task. The workflowcheck
+ * runtime used can be changed via the {@value #CONFIGURATION_NAME}
+ * configuration and defaults to the same version as this plugin.
+ */
+public class WorkflowCheckPlugin implements Plugin<Project> {
+  public static final String TASK_NAME = "workflowcheck";
+  public static final String CONFIGURATION_NAME = "workflowcheck";
+  static final String BUILD_SERVICE_NAME = "workflowcheck";
+
+  @Override
+  public void apply(Project project) {
+    // For the toolchain service
+    project.getPluginManager().apply(JavaBasePlugin.class);
+
+    var configuration = project.getConfigurations().create(CONFIGURATION_NAME, config -> {
+      config.setDescription("The workflowcheck runtime used by workflowcheck tasks");
+      config.setCanBeConsumed(false);
+      config.defaultDependencies(deps -> deps.add(
+              project.getDependencies().create("io.temporal:temporal-workflowcheck:" + pluginVersion())));
+    });
+
+    // Every project in the build shares the same service, so all tasks use the
+    // same cache
+    var buildService = project.getGradle().getSharedServices().registerIfAbsent(
+            BUILD_SERVICE_NAME, WorkflowCheckBuildService.class, spec -> {
+              spec.getParameters().getCacheDirectory().set(
+                      project.getRootProject().getLayout().getBuildDirectory().dir("workflowcheck-cache"));
+              spec.getParameters().getMemoryCacheMb().set(512);
+            });
+
+    // Defaults for every workflowcheck task, including user-created ones
+    var toolchains = project.getExtensions().getByType(JavaToolchainService.class);
+    project.getTasks().withType(WorkflowCheckTask.class).configureEach(task -> {
+      task.getWorkflowcheckClasspath().from(configuration);
+      task.getBuildService().set(buildService);
+      task.usesService(buildService);
+      // Java 17+ is required for workflowcheck
+      task.getJavaLauncher().convention(toolchains.launcherFor(spec ->
+              spec.getLanguageVersion().set(JavaLanguageVersion.of(17))));
+      task.getReportFile().convention(project.getLayout().getBuildDirectory().file(
+              "reports/workflowcheck/" + task.getName() + ".txt"));
+    });
+
+    project.getPluginManager().withPlugin("java", plugin -> {
+      var sourceSets = project.getExtensions().getByType(SourceSetContainer.class);
+      var task = project.getTasks().register(TASK_NAME, WorkflowCheckTask.class, t -> {
+        t.setDescription("Checks workflow implementations on the main runtime classpath for invalid calls.");
+        t.setGroup(LifecycleBasePlugin.VERIFICATION_GROUP);
+        t.getClasspath().from(sourceSets.getByName(SourceSet.MAIN_SOURCE_SET_NAME).getRuntimeClasspath());
+      });
+      project.getTasks().named(LifecycleBasePlugin.CHECK_TASK_NAME, check -> check.dependsOn(task));
+    });
+  }
+
+  private static String pluginVersion() {
+    var version = WorkflowCheckPlugin.class.getPackage().getImplementationVersion();
+    if (version == null) {
+      throw new GradleException("Unknown workflowcheck plugin version, add a " + CONFIGURATION_NAME +
+              " dependency explicitly");
+    }
+    return version;
+  }
+}
@@ -0,0 +1,103 @@
+package io.temporal.workflowcheck.gradle;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.*;
+import org.gradle.jvm.toolchain.JavaLauncher;
+import org.gradle.workers.WorkerExecutor;
+
+import javax.inject.Inject;
+
+/**
+ * Task that checks the workflow implementations on a classpath for invalid
+ * calls. The output is written to the report file and the task fails if any
+ * workflow method is invalid, unless failures are ignored. The check runs in a
+ * worker process that is reused across tasks and builds.
+ */
+@CacheableTask
+public abstract class WorkflowCheckTask extends DefaultTask {
+  /** Classpath to check. */
+  @Classpath
+  public abstract ConfigurableFileCollection getClasspath();
+
+  /**
+   * Classpath entries to scan for workflow implementations. Default is empty,
+   * meaning the whole classpath is scanned. Otherwise, classes only on the
+   * classpath are only parsed when reached from scanned classes.
+   */
+  @Classpath
+  public abstract ConfigurableFileCollection getScanClasspath();
+
+  /**
+   * Configuration files, applied in order after the default configuration (if
+   * enabled).
+   */
+  @InputFiles
+  @PathSensitive(PathSensitivity.NONE)
+  public abstract ConfigurableFileCollection getConfigFiles();
+
+  /** Whether the default configuration is applied first. Default is true. */
+  @Input
+  public abstract Property<Boolean> getDefaultConfig();
+
+  /** Whether the report also shows valid workflow methods. Default is false. */
+  @Input
+  public abstract Property<Boolean> getShowValid();
+
+  /** Whether invalid workflow methods do not fail the task. Default is false. */
+  @Input
+  public abstract Property<Boolean> getIgnoreFailures();
+
+  /** Number of threads to parse classes with. Default is 1. */
+  @Internal
+  public abstract Property<Integer> getThreads();
+
+  /** The workflowcheck runtime. */
+  @Classpath
+  public abstract ConfigurableFileCollection getWorkflowcheckClasspath();
+
+  /** Java the check runs on, which must be 17+. */
+  @Nested
+  public abstract Property<JavaLauncher> getJavaLauncher();
+
+  /** File the output of the check is written to. */
+  @OutputFile
+  public abstract RegularFileProperty getReportFile();
+
+  /** Service shared by all workflowcheck tasks in the build. */
+  @Internal
+  public abstract Property<WorkflowCheckBuildService> getBuildService();
+
+  @Inject
+  protected abstract WorkerExecutor getWorkerExecutor();
+
+  public WorkflowCheckTask() {
+    getDefaultConfig().convention(true);
+    getShowValid().convention(false);
+    getIgnoreFailures().convention(false);
+    getThreads().convention(1);
+  }
+
+  @TaskAction
+  public void check() {
+    var serviceParams = getBuildService().get().getParameters();
+    var workQueue = getWorkerExecutor().processIsolation(spec -> {
+      spec.getClasspath().from(getWorkflowcheckClasspath());
+      spec.forkOptions(fork -> fork.setExecutable(getJavaLauncher().get().getExecutablePath().getAsFile()));
+    });
+    workQueue.submit(WorkflowCheckAction.class, params -> {
+      params.getClasspath().from(getClasspath());
+      params.getScanClasspath().from(getScanClasspath());
+      params.getConfigFiles().from(getConfigFiles());
+      params.getDefaultConfig().set(getDefaultConfig());
+      params.getShowValid().set(getShowValid());
+      params.getIgnoreFailures().set(getIgnoreFailures());
+      params.getThreads().set(getThreads());
+      params.getCacheDirectory().set(serviceParams.getCacheDirectory());
+      params.getMemoryCacheMb().set(serviceParams.getMemoryCacheMb());
+      params.getReportFile().set(getReportFile());
+    });
+  }
+}
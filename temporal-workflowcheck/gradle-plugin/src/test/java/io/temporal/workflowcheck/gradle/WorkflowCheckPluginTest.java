@@ -0,0 +1,130 @@
+package io.temporal.workflowcheck.gradle;
+
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorkflowCheckPluginTest {
+  @TempDir
+  Path projectDir;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    // Use the workflowcheck under test instead of a published one
+    var workflowcheckFiles = new ArrayList<String>();
+    for (var file : System.getProperty("workflowcheck.classpath").split(File.pathSeparator)) {
+      workflowcheckFiles.add("'" + file.replace('\\', '/') + "'");
+    }
+    Files.writeString(projectDir.resolve("settings.gradle"), """
+            rootProject.name = 'workflowcheck-test'
+            buildCache {
+                local {
+                    directory = new File(rootDir, 'build-cache')
+                }
+            }
+            """);
+    Files.writeString(projectDir.resolve("build.gradle"), """
+            plugins {
+                id 'java'
+                id 'io.temporal.workflowcheck'
+            }
+
+            dependencies {
+                workflowcheck files(%s)
+            }
+
+            tasks.named('workflowcheck') {
+                // The running Java is always an available toolchain
+                javaLauncher = javaToolchains.launcherFor {
+                    languageVersion = JavaLanguageVersion.of(%d)
+                }
+                ignoreFailures = providers.gradleProperty('ignoreWorkflowFailures').present
+                if (providers.gradleProperty('scanMainClasses').present) {
+                    scanClasspath.from(sourceSets.main.output.classesDirs)
+                }
+            }
+            """.formatted(String.join(", ", workflowcheckFiles), Runtime.version().feature()));
+
+    // Stand-ins for the SDK annotations, only their names matter
+    writeSource("io/temporal/workflow/WorkflowInterface.java", """
+            package io.temporal.workflow;
+
+            public @interface WorkflowInterface { }
+            """);
+    writeSource("io/temporal/workflow/WorkflowMethod.java", """
+            package io.temporal.workflow;
+
+            public @interface WorkflowMethod { }
+            """);
+    writeSource("sample/MyWorkflow.java", """
+            package sample;
+
+            import io.temporal.workflow.*;
+
+            @WorkflowInterface
+            public interface MyWorkflow {
+              @WorkflowMethod
+              long run();
+            }
+            """);
+    writeSource("sample/MyWorkflowImpl.java", """
+            package sample;
+
+            public class MyWorkflowImpl implements MyWorkflow {
+              @Override
+              public long run() {
+                return System.currentTimeMillis();
+              }
+            }
+            """);
+  }
+
+  @Test
+  public void testInvalidWorkflowFailsCheck() throws IOException {
+    var result = runner("check").buildAndFail();
+    assertEquals(TaskOutcome.FAILED, result.task(":workflowcheck").getOutcome());
+    assertTrue(result.getOutput().contains("invokes java.lang.System.currentTimeMillis()"));
+    var report = Files.readString(projectDir.resolve("build/reports/workflowcheck/workflowcheck.txt"));
+    assertTrue(report.contains("Workflow method sample.MyWorkflowImpl.run()"));
+  }
+
+  @Test
+  public void testScanClasspath() throws IOException {
+    var result = runner("workflowcheck", "-PscanMainClasses").buildAndFail();
+    assertEquals(TaskOutcome.FAILED, result.task(":workflowcheck").getOutcome());
+    var report = Files.readString(projectDir.resolve("build/reports/workflowcheck/workflowcheck.txt"));
+    assertTrue(report.contains("Workflow method sample.MyWorkflowImpl.run()"));
+  }
+
+  @Test
+  public void testUpToDateAndCached() {
+    var args = new String[]{"workflowcheck", "-PignoreWorkflowFailures", "--build-cache", "--configuration-cache"};
+    var first = runner(args).build();
+    assertEquals(TaskOutcome.SUCCESS, first.task(":workflowcheck").getOutcome());
+    var second = runner(args).build();
+    assertEquals(TaskOutcome.UP_TO_DATE, second.task(":workflowcheck").getOutcome());
+    assertTrue(second.getOutput().contains("Reusing configuration cache"));
+    var afterClean = runner("clean", "workflowcheck", "-PignoreWorkflowFailures", "--build-cache").build();
+    assertEquals(TaskOutcome.FROM_CACHE, afterClean.task(":workflowcheck").getOutcome());
+  }
+
+  private void writeSource(String path, String contents) throws IOException {
+    var file = projectDir.resolve("src/main/java").resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.writeString(file, contents);
+  }
+
+  private GradleRunner runner(String... args) {
+    return GradleRunner.create().withProjectDir(projectDir.toFile()).withPluginClasspath().withArguments(args);
+  }
+}
@@ -0,0 +1,10 @@
+package io.temporal.workflowcheck.it;
+
+import io.temporal.workflow.WorkflowInterface;
+import io.temporal.workflow.WorkflowMethod;
+
+@WorkflowInterface
+public interface MyWorkflow {
+  @WorkflowMethod
+  String hour();
+}
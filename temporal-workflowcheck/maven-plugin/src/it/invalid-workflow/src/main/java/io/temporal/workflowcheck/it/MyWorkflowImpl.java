@@ -0,0 +1,10 @@
+package io.temporal.workflowcheck.it;
+
+import java.time.LocalTime;
+
+public class MyWorkflowImpl implements MyWorkflow {
+  @Override
+  public String hour() {
+    return String.valueOf(LocalTime.now().getHour());
+  }
+}
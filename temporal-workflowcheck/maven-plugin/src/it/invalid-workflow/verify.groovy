@@ -0,0 +1,7 @@
+def log = new File(basedir, 'build.log').text
+assert log.contains('Workflow method io.temporal.workflowcheck.it.MyWorkflowImpl.hour()')
+assert log.contains('invokes java.time.LocalTime.now() which is configured as invalid')
+assert log.contains('Workflow check failed')
+assert new File(basedir, 'target/workflowcheck/report.txt').isFile()
+// Nothing is skipped after a failure
+assert !new File(basedir, 'target/workflowcheck/fingerprint').exists()
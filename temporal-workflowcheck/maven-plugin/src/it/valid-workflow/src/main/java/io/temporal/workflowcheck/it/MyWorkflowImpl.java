@@ -0,0 +1,13 @@
+package io.temporal.workflowcheck.it;
+
+import io.temporal.workflow.Workflow;
+
+import java.time.Instant;
+import java.time.ZoneId;
+
+public class MyWorkflowImpl implements MyWorkflow {
+  @Override
+  public String hour() {
+    return String.valueOf(Instant.ofEpochMilli(Workflow.currentTimeMillis()).atZone(ZoneId.of("UTC")).getHour());
+  }
+}
@@ -0,0 +1,4 @@
+def log = new File(basedir, 'build.log').text
+assert !log.contains('[ERROR]')
+assert log.contains('Classes and dependencies unchanged since last successful workflow check, skipping')
+assert new File(basedir, 'target/workflowcheck/fingerprint').isFile()
@@ -0,0 +1,218 @@
+package io.temporal.workflowcheck.maven;
+
+import io.temporal.workflowcheck.Main;
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Check the workflow implementations on the runtime classpath of the project
+ * for invalid calls, failing the build if any are invalid. The check runs in
+ * the Maven process, so parsed classes kept in memory are shared with the
+ * checks of the other modules in the reactor. A module whose classes,
+ * dependencies, and configuration have not changed since its last successful
+ * check is skipped.
+ */
+@Mojo(
+        name = "check",
+        defaultPhase = LifecyclePhase.VERIFY,
+        requiresDependencyResolution = ResolutionScope.RUNTIME,
+        threadSafe = true)
+public class CheckMojo extends AbstractMojo {
+  @Parameter(defaultValue = "${project}", readonly = true, required = true)
+  private MavenProject project;
+
+  @Parameter(defaultValue = "${plugin}", readonly = true, required = true)
+  private PluginDescriptor plugin;
+
+  /**
+   * Whether only the project's own classes are scanned for workflow
+   * implementations. Dependency classes are then only parsed when reached from
+   * the project's classes.
+   */
+  @Parameter(property = "workflowcheck.scanProjectClasses", defaultValue = "false")
+  private boolean scanProjectClasses;
+
+  /**
+   * Configuration files, applied in order after the default configuration (if
+   * enabled).
+   */
+  @Parameter
+  private List<File> configFiles;
+
+  /** Whether the default configuration is applied first. */
+  @Parameter(property = "workflowcheck.defaultConfig", defaultValue = "true")
+  private boolean defaultConfig;
+
+  /** Whether valid workflow methods are also shown. */
+  @Parameter(property = "workflowcheck.showValid", defaultValue = "false")
+  private boolean showValid;
+
+  /** Whether invalid workflow methods do not fail the build. */
+  @Parameter(property = "workflowcheck.ignoreFailures", defaultValue = "false")
+  private boolean ignoreFailures;
+
+  /** Number of threads to parse classes with. */
+  @Parameter(property = "workflowcheck.threads", defaultValue = "1")
+  private int threads;
+
+  /**
+   * Directory parsed classes are cached in across builds. By default, all
+   * modules of the reactor share the same directory.
+   */
+  @Parameter(
+          property = "workflowcheck.cacheDirectory",
+          defaultValue = "${session.executionRootDirectory}/target/workflowcheck-cache")
+  private File cacheDirectory;
+
+  /**
+   * Max megabytes of parsed classes kept in memory for the checks of other
+   * modules in the same Maven process.
+   */
+  @Parameter(property = "workflowcheck.memoryCacheMb", defaultValue = "512")
+  private int memoryCacheMb;
+
+  /** Directory the report and the fingerprint of the last successful check are written to. */
+  @Parameter(defaultValue = "${project.build.directory}/workflowcheck", required = true)
+  private File outputDirectory;
+
+  /** Whether to check even if nothing changed since the last successful check. */
+  @Parameter(property = "workflowcheck.force", defaultValue = "false")
+  private boolean force;
+
+  /** Whether to skip the check entirely. */
+  @Parameter(property = "workflowcheck.skip", defaultValue = "false")
+  private boolean skip;
+
+  @Override
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    if (skip) {
+      getLog().info("Skipping workflow check");
+      return;
+    }
+    List<String> classpath;
+    try {
+      classpath = project.getRuntimeClasspathElements();
+    } catch (DependencyResolutionRequiredException e) {
+      throw new MojoExecutionException("Unable to resolve runtime classpath", e);
+    }
+
+    var args = new ArrayList<String>();
+    args.add(String.join(File.pathSeparator, classpath));
+    if (scanProjectClasses) {
+      args.add("--scan");
+      args.add(project.getBuild().getOutputDirectory());
+    }
+    if (configFiles != null) {
+      for (var configFile : configFiles) {
+        args.add("--config");
+        args.add(configFile.getAbsolutePath());
+      }
+    }
+    if (!defaultConfig) {
+      args.add("--no-default-config");
+    }
+    if (showValid) {
+      args.add("--show-valid");
+    }
+    args.add("--threads");
+    args.add(String.valueOf(threads));
+    args.add("--cache-dir");
+    args.add(cacheDirectory.getAbsolutePath());
+    args.add("--memory-cache-mb");
+    args.add(String.valueOf(memoryCacheMb));
+
+    // Skip if the fingerprint of the last successful check is the same
+    var fingerprintFile = new File(outputDirectory, "fingerprint");
+    var reportFile = new File(outputDirectory, "report.txt");
+    String fingerprint;
+    try {
+      fingerprint = fingerprint(args, classpath);
+      if (!force && fingerprintFile.isFile() &&
+              fingerprint.equals(Files.readString(fingerprintFile.toPath()))) {
+        getLog().info("Classes and dependencies unchanged since last successful workflow check, skipping");
+        return;
+      }
+      Files.deleteIfExists(fingerprintFile.toPath());
+    } catch (IOException e) {
+      throw new MojoExecutionException("Unable to fingerprint workflow check inputs", e);
+    }
+
+    var out = new ByteArrayOutputStream();
+    var err = new ByteArrayOutputStream();
+    int exitCode;
+    try {
+      exitCode = Main.check(args.toArray(new String[0]),
+              new PrintStream(out, true, StandardCharsets.UTF_8),
+              new PrintStream(err, true, StandardCharsets.UTF_8));
+      Files.createDirectories(outputDirectory.toPath());
+      Files.write(reportFile.toPath(), out.toByteArray());
+    } catch (IOException e) {
+      throw new MojoExecutionException("Workflow check failed", e);
+    }
+    for (var line : err.toString(StandardCharsets.UTF_8).split("\\R")) {
+      if (!line.isEmpty()) {
+        getLog().info(line);
+      }
+    }
+    for (var line : out.toString(StandardCharsets.UTF_8).split("\\R")) {
+      if (exitCode == 0) {
+        getLog().info(line);
+      } else {
+        getLog().error(line);
+      }
+    }
+
+    if (exitCode != 0) {
+      if (!ignoreFailures) {
+        throw new MojoFailureException("Workflow check failed, see the report at " + reportFile);
+      }
+      return;
+    }
+    try {
+      Files.writeString(fingerprintFile.toPath(), fingerprint);
+    } catch (IOException e) {
+      throw new MojoExecutionException("Unable to write workflow check fingerprint", e);
+    }
+  }
+
+  private String fingerprint(List<String> args, List<String> classpath) throws IOException {
+    var fingerprint = new Fingerprint();
+    // The plugin and the JDK it runs on
+    fingerprint.addString(plugin.getId());
+    for (var artifact : plugin.getArtifacts()) {
+      fingerprint.addFile(artifact.getFile());
+    }
+    fingerprint.addString(System.getProperty("java.home"));
+    fingerprint.addString(System.getProperty("java.runtime.version"));
+    // The args (which include the classpath) and what they refer to
+    for (var arg : args) {
+      fingerprint.addString(arg);
+    }
+    if (configFiles != null) {
+      for (var configFile : configFiles) {
+        fingerprint.addFileContents(configFile);
+      }
+    }
+    for (var element : classpath) {
+      fingerprint.addFile(new File(element));
+    }
+    return fingerprint.toHex();
+  }
+}
@@ -0,0 +1,82 @@
+package io.temporal.workflowcheck.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+
+/**
+ * Hash of everything the result of a check depends on. Files are hashed by
+ * path, size, and modification time (and directories by those of every file in
+ * them), except files added with {@link #addFileContents(File)}.
+ */
+class Fingerprint {
+  private final MessageDigest digest;
+
+  Fingerprint() {
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  Fingerprint addString(String str) {
+    var bytes = str.getBytes(StandardCharsets.UTF_8);
+    addLong(bytes.length);
+    digest.update(bytes);
+    return this;
+  }
+
+  Fingerprint addFile(File file) throws IOException {
+    addString(file.getAbsolutePath());
+    if (file.isDirectory()) {
+      // Sorted for a stable hash
+      var files = new ArrayList<Path>();
+      try (var stream = Files.walk(file.toPath())) {
+        for (var path : (Iterable<Path>) stream::iterator) {
+          if (Files.isRegularFile(path)) {
+            files.add(path);
+          }
+        }
+      }
+      files.sort(Path::compareTo);
+      addLong(files.size());
+      for (var path : files) {
+        addString(file.toPath().relativize(path).toString());
+        addLong(Files.size(path));
+        addLong(Files.getLastModifiedTime(path).toMillis());
+      }
+    } else if (file.isFile()) {
+      addLong(file.length());
+      addLong(file.lastModified());
+    } else {
+      addLong(-1);
+    }
+    return this;
+  }
+
+  Fingerprint addFileContents(File file) throws IOException {
+    addString(file.getAbsolutePath());
+    var bytes = Files.readAllBytes(file.toPath());
+    addLong(bytes.length);
+    digest.update(bytes);
+    return this;
+  }
+
+  private void addLong(long v) {
+    for (var i = 56; i >= 0; i -= 8) {
+      digest.update((byte) (v >>> i));
+    }
+  }
+
+  /** Finish the hash as a hex string. This fingerprint cannot be used after. */
+  String toHex() {
+    return HexFormat.of().formatHex(digest.digest());
+  }
+}
@@ -0,0 +1,49 @@
+package io.temporal.workflowcheck.maven;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FingerprintTest {
+  @Test
+  public void testFingerprintChanges(@TempDir Path dir) throws IOException {
+    var classesDir = dir.resolve("classes");
+    Files.createDirectories(classesDir.resolve("a"));
+    var classFile = Files.writeString(classesDir.resolve("a/B.class"), "v1");
+    var configFile = Files.writeString(dir.resolve("config.properties"), "a=true");
+
+    var initial = fingerprint(classesDir, configFile);
+    assertEquals(initial, fingerprint(classesDir, configFile));
+
+    // Changed class
+    Files.writeString(classFile, "v2");
+    Files.setLastModifiedTime(classFile, FileTime.fromMillis(Files.getLastModifiedTime(classFile).toMillis() + 1000));
+    var changedClass = fingerprint(classesDir, configFile);
+    assertNotEquals(initial, changedClass);
+
+    // Added class
+    Files.writeString(classesDir.resolve("a/C.class"), "v1");
+    var addedClass = fingerprint(classesDir, configFile);
+    assertNotEquals(changedClass, addedClass);
+
+    // Changed config contents even with the same size and time
+    var configTime = Files.getLastModifiedTime(configFile);
+    Files.writeString(configFile, "a=fals");
+    Files.setLastModifiedTime(configFile, configTime);
+    assertNotEquals(addedClass, fingerprint(classesDir, configFile));
+  }
+
+  private static String fingerprint(Path classesDir, Path configFile) throws IOException {
+    return new Fingerprint().
+            addString("--show-valid").
+            addFileContents(configFile.toFile()).
+            addFile(classesDir.toFile()).
+            toHex();
+  }
+}
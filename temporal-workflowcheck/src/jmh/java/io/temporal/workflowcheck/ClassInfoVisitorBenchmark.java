@@ -0,0 +1,65 @@
+package io.temporal.workflowcheck;
+
+import org.objectweb.asm.ClassReader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of parsing the Temporal SDK classes of the test classpath, both
+ * only the headers like when a class is loaded, and the headers followed by
+ * every method body like when every method of a class is processed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassInfoVisitorBenchmark {
+  private Config config;
+  private byte[][] classes;
+
+  @Setup
+  public void setup() throws IOException {
+    config = TestWorkload.config();
+    var classBytes = new ArrayList<byte[]>();
+    try (var classPath = new ClassPath(TestWorkload.classPath())) {
+      var bytes = new ClassPath.ClassBytes();
+      for (var className : classPath.classes) {
+        // The SDK classes, not the test classes
+        if (className.startsWith("io/temporal/") && !className.startsWith("io/temporal/workflowcheck/") &&
+                classPath.readClass(className, bytes)) {
+          classBytes.add(Arrays.copyOf(bytes.bytes, bytes.length));
+        }
+      }
+    }
+    classes = classBytes.toArray(new byte[0][]);
+  }
+
+  @Benchmark
+  public void headers(Blackhole blackhole) {
+    var symbols = new SymbolTable();
+    for (var bytes : classes) {
+      var visitor = new ClassInfoVisitor(config, symbols);
+      new ClassReader(bytes).accept(visitor, ClassReader.SKIP_CODE);
+      blackhole.consume(visitor.classInfo);
+    }
+  }
+
+  @Benchmark
+  public void headersAndBodies(Blackhole blackhole) {
+    var symbols = new SymbolTable();
+    for (var bytes : classes) {
+      var reader = new ClassReader(bytes);
+      var visitor = new ClassInfoVisitor(config, symbols);
+      reader.accept(visitor, ClassReader.SKIP_CODE);
+      ClassInfoVisitor.visitBodies(config, symbols, reader, visitor.classInfo);
+      blackhole.consume(visitor.classInfo);
+    }
+  }
+}
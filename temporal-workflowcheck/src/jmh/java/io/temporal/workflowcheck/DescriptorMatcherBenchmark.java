@@ -0,0 +1,119 @@
+package io.temporal.workflowcheck;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of checking real standard library member accesses against the
+ * default configuration, compared to the original string-building matcher.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DescriptorMatcherBenchmark {
+  // Packages whose classes' member accesses make up the workload
+  private static final String[] PACKAGES = {
+          "java/lang", "java/util", "java/util/concurrent", "java/io", "java/nio/file", "java/time", "java/net"
+  };
+
+  private DescriptorMatcher compiled;
+  private LegacyDescriptorMatcher legacy;
+  // Parallel arrays of class name, member name (null for class-only checks),
+  // and method descriptor (null for fields)
+  private String[] classNames;
+  private String[] memberNames;
+  private String[] methodDescriptors;
+
+  @Setup
+  public void setup() throws IOException {
+    compiled = Config.fromProperties(Config.defaultProperties()).invalidMembers;
+    legacy = new LegacyDescriptorMatcher(compiled.descriptors());
+
+    var accesses = new ArrayList<String[]>();
+    var jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+    for (var pkg : PACKAGES) {
+      try (var paths = Files.list(jrt.getPath("/modules/java.base/" + pkg))) {
+        for (var path : (Iterable<Path>) paths::iterator) {
+          if (path.toString().endsWith(".class")) {
+            collectAccesses(Files.readAllBytes(path), accesses);
+          }
+        }
+      }
+    }
+    classNames = new String[accesses.size()];
+    memberNames = new String[accesses.size()];
+    methodDescriptors = new String[accesses.size()];
+    for (var i = 0; i < accesses.size(); i++) {
+      classNames[i] = accesses.get(i)[0];
+      memberNames[i] = accesses.get(i)[1];
+      methodDescriptors[i] = accesses.get(i)[2];
+    }
+
+    // Confirm both give the same results before measuring
+    for (var i = 0; i < classNames.length; i++) {
+      var expected = legacy.check(classNames[i], memberNames[i], methodDescriptors[i]);
+      var actual = compiled.check(classNames[i], memberNames[i], methodDescriptors[i]);
+      if (!Objects.equals(expected, actual)) {
+        throw new IllegalStateException("Mismatch for " + classNames[i] + "." + memberNames[i] +
+                methodDescriptors[i] + ": expected " + expected + ", got " + actual);
+      }
+    }
+  }
+
+  private static void collectAccesses(byte[] bytes, List<String[]> accesses) {
+    new ClassReader(bytes).accept(new ClassVisitor(Opcodes.ASM9) {
+      @Override
+      public void visit(
+              int version, int access, String name, String signature, String superName, String[] interfaces) {
+        accesses.add(new String[]{name, null, null});
+      }
+
+      @Override
+      public MethodVisitor visitMethod(
+              int access, String name, String descriptor, String signature, String[] exceptions) {
+        return new MethodVisitor(Opcodes.ASM9) {
+          @Override
+          public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+            accesses.add(new String[]{owner, name, descriptor});
+          }
+
+          @Override
+          public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+            accesses.add(new String[]{owner, name, null});
+          }
+        };
+      }
+    }, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+  }
+
+  @Benchmark
+  public void compiled(Blackhole blackhole) {
+    for (var i = 0; i < classNames.length; i++) {
+      blackhole.consume(compiled.check(classNames[i], memberNames[i], methodDescriptors[i]));
+    }
+  }
+
+  @Benchmark
+  public void legacy(Blackhole blackhole) {
+    for (var i = 0; i < classNames.length; i++) {
+      blackhole.consume(legacy.check(classNames[i], memberNames[i], methodDescriptors[i]));
+    }
+  }
+}
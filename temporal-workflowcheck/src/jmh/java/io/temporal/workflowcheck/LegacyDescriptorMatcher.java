@@ -0,0 +1,90 @@
+package io.temporal.workflowcheck;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+
+/**
+ * The original string-building implementation of
+ * {@link DescriptorMatcher#check(String, String, String)}, kept as a baseline
+ * for benchmarks.
+ */
+class LegacyDescriptorMatcher {
+  private final Map<String, Boolean> descriptors;
+
+  LegacyDescriptorMatcher(Map<String, Boolean> descriptors) {
+    this.descriptors = descriptors;
+  }
+
+  @Nullable
+  Boolean check(String className, @Nullable String memberName, @Nullable String methodDescriptor) {
+    // Check full descriptor sans return, then full sans params, then just
+    // member, then just member sans params, then FQCN, and then each parent
+    // package. We remove return values from the method descriptor since the
+    // map only allows arguments.
+    if (methodDescriptor != null) {
+      methodDescriptor = methodDescriptor.substring(0, methodDescriptor.indexOf(')') + 1);
+    }
+
+    // Member name + descriptor doesn't have to be present to check class
+    if (memberName != null) {
+      // Try qualified class with method
+      var classAndMember = className + "." + memberName;
+      if (methodDescriptor != null) {
+        var invalid = descriptors.get(classAndMember + methodDescriptor);
+        if (invalid != null) {
+          return invalid;
+        }
+      }
+      var invalid = descriptors.get(classAndMember);
+      if (invalid != null) {
+        return invalid;
+      }
+      // Try unqualified class with member
+      var slashIndex = className.lastIndexOf('/');
+      if (slashIndex > 0) {
+        classAndMember = classAndMember.substring(slashIndex + 1);
+        if (methodDescriptor != null) {
+          invalid = descriptors.get(classAndMember + methodDescriptor);
+          if (invalid != null) {
+            return invalid;
+          }
+        }
+        invalid = descriptors.get(classAndMember);
+        if (invalid != null) {
+          return invalid;
+        }
+      }
+      // Just member
+      if (methodDescriptor != null) {
+        invalid = descriptors.get(memberName + methodDescriptor);
+        if (invalid != null) {
+          return invalid;
+        }
+      }
+      invalid = descriptors.get(memberName);
+      if (invalid != null) {
+        return invalid;
+      }
+    }
+    // Unqualified class name
+    var slashIndex = className.lastIndexOf('/');
+    if (slashIndex > 0) {
+      var invalid = descriptors.get(className.substring(slashIndex + 1));
+      if (invalid != null) {
+        return invalid;
+      }
+    }
+    // All packages above class
+    while (true) {
+      var invalid = descriptors.get(className);
+      if (invalid != null) {
+        return invalid;
+      }
+      var slash = className.lastIndexOf('/');
+      if (slash == -1) {
+        return null;
+      }
+      className = className.substring(0, slash);
+    }
+  }
+}
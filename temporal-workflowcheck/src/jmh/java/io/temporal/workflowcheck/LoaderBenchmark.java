@@ -0,0 +1,96 @@
+package io.temporal.workflowcheck;
+
+import org.objectweb.asm.Opcodes;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of processing the validity of every workflow impl method of the
+ * test classpath with a new loader, which walks their call graphs through the
+ * Temporal SDK, Guava, and the standard library. The workflow classes are
+ * loaded before each invocation, but the classes reached from them are parsed
+ * during it like they are in a check.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoaderBenchmark {
+  private Config config;
+  private ClassPath classPath;
+  private List<String> candidateClassNames;
+  private Loader loader;
+  // Parallel lists of the workflow impl methods and their classes
+  private final List<ClassInfo> implClasses = new ArrayList<>();
+  private final List<ClassInfo.MethodInfo> implMethods = new ArrayList<>();
+
+  @Setup
+  public void setup() throws IOException {
+    config = TestWorkload.config();
+    classPath = new ClassPath(TestWorkload.classPath());
+    // Prefilter once up front, it is not what is measured
+    var loader = newLoader();
+    candidateClassNames = new ArrayList<>();
+    for (var className : classPath.classes) {
+      if (loader.mayHaveWorkflowImpl(className)) {
+        candidateClassNames.add(className);
+      }
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    classPath.close();
+  }
+
+  @Setup(Level.Invocation)
+  public void setupInvocation() {
+    loader = newLoader();
+    implClasses.clear();
+    implMethods.clear();
+    for (var className : candidateClassNames) {
+      var info = loader.loadClass(className);
+      for (var methodEntry : info.methods.entrySet()) {
+        for (var method : methodEntry.getValue()) {
+          if ((method.access & Opcodes.ACC_STATIC) == 0 &&
+                  (method.access & Opcodes.ACC_PUBLIC) != 0 &&
+                  (method.access & Opcodes.ACC_ABSTRACT) == 0 &&
+                  (method.access & Opcodes.ACC_NATIVE) == 0) {
+            method.workflowImpl = loader.findWorkflowImplInfo(
+                    info, info.name, methodEntry.getKey(), method.descriptor);
+            if (method.workflowImpl != null) {
+              implClasses.add(info);
+              implMethods.add(method);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private Loader newLoader() {
+    // Like a check, the bundled index is only used if compatible with the
+    // config
+    var jdkIndex = JdkIndex.load(Runtime.version().feature());
+    if (jdkIndex != null && !jdkIndex.isCompatible(config)) {
+      jdkIndex = null;
+    }
+    return new Loader(config, classPath, null, jdkIndex);
+  }
+
+  @Benchmark
+  public void processMethodValidity(Blackhole blackhole) {
+    for (var i = 0; i < implMethods.size(); i++) {
+      var method = implMethods.get(i);
+      loader.processMethodValidity(implClasses.get(i), method);
+      blackhole.consume(method.isInvalid());
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package io.temporal.workflowcheck;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Benchmark of printing every workflow impl method found on the test classpath. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrinterBenchmark {
+  // Parallel lists of the workflow impl methods, their names, and their classes
+  private final List<ClassInfo> classes = new ArrayList<>();
+  private final List<String> methodNames = new ArrayList<>();
+  private final List<ClassInfo.MethodInfo> methods = new ArrayList<>();
+
+  @Setup
+  public void setup() throws IOException {
+    var infos = new WorkflowCheck(TestWorkload.config()).findWorkflowClasses(TestWorkload.classPath());
+    for (var info : infos) {
+      for (var methodEntry : info.methods.entrySet()) {
+        for (var method : methodEntry.getValue()) {
+          if (method.workflowImpl != null) {
+            classes.add(info);
+            methodNames.add(methodEntry.getKey());
+            methods.add(method);
+          }
+        }
+      }
+    }
+  }
+
+  @Benchmark
+  public void methodText(Blackhole blackhole) {
+    for (var i = 0; i < methods.size(); i++) {
+      blackhole.consume(Printer.methodText(classes.get(i), methodNames.get(i), methods.get(i)));
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package io.temporal.workflowcheck;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * The classpath and config of the tests (i.e. the test workflows, the Temporal
+ * SDK, and Guava), used as a realistic workload by the benchmarks. The jmh task
+ * provides these as system properties.
+ */
+class TestWorkload {
+  static String classPath() {
+    return requiredProperty("workflowcheck.benchmark.classPath");
+  }
+
+  static Config config() throws IOException {
+    var props = new Properties();
+    try (var reader = Files.newBufferedReader(Path.of(requiredProperty("workflowcheck.benchmark.config")))) {
+      props.load(reader);
+    }
+    return Config.fromProperties(Config.defaultProperties(), props);
+  }
+
+  private static String requiredProperty(String name) {
+    var value = System.getProperty(name);
+    if (value == null) {
+      throw new IllegalStateException("Missing " + name + " system property, benchmarks must be run with the jmh task");
+    }
+    return value;
+  }
+}
@@ -0,0 +1,37 @@
+package io.temporal.workflowcheck;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of an entire check of the test classpath without any cache, like
+ * a single run of the CLI.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class WorkflowCheckBenchmark {
+  @Param({ "1", "4" })
+  public int threads;
+
+  private WorkflowCheck workflowCheck;
+  private String classPath;
+
+  @Setup
+  public void setup() throws IOException {
+    workflowCheck = new WorkflowCheck(TestWorkload.config(),
+            WorkflowCheck.Options.newBuilder().setThreads(threads).build());
+    classPath = TestWorkload.classPath();
+  }
+
+  @Benchmark
+  public List<ClassInfo> findWorkflowClasses() throws IOException {
+    return workflowCheck.findWorkflowClasses(classPath);
+  }
+}
@@ -0,0 +1,245 @@
+package io.temporal.workflowcheck;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of a single check, collected when enabled with
+ * {@link WorkflowCheck.Options.Builder#setStatsEnabled(boolean)}. Phases are
+ * timed in the order they run, and classes parsed on other threads are
+ * counted with the rest. Time spent in the {@link WorkflowCheck.Listener} is
+ * not counted in the phases it is called during.
+ */
+public class CheckStats {
+  // Wall time of each phase in nanos, in order
+  private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+  private long phaseStart;
+  private long listenerNanos;
+  private final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+  // Peak of each heap pool when the check started, the peaks are of the
+  // entire JVM and are never reset since other checks may be running
+  private final long[] startPeakHeapBytes;
+  private long peakHeapBytes;
+
+  // Updated while parsing, which may be on multiple threads
+  final LongAdder classesParsed = new LongAdder();
+  final LongAdder classesFromCache = new LongAdder();
+  final LongAdder classesFromJdkIndex = new LongAdder();
+  final LongAdder missingClasses = new LongAdder();
+  final LongAdder classesReloaded = new LongAdder();
+  final LongAdder bytesRead = new LongAdder();
+  final LongAdder parseNanos = new LongAdder();
+  // Updated during analysis, which is sequential
+  long classesEnumerated;
+  long methodBodiesParsed;
+  long methodsVisited;
+  long callSitesResolved;
+  long hierarchiesBuilt;
+  long classesEvicted;
+
+  CheckStats() {
+    for (var pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        heapPools.add(pool);
+      }
+    }
+    startPeakHeapBytes = new long[heapPools.size()];
+    for (var i = 0; i < heapPools.size(); i++) {
+      startPeakHeapBytes[i] = heapPools.get(i).getPeakUsage().getUsed();
+    }
+    phaseStart = System.nanoTime();
+  }
+
+  // End the current phase with the given name and start the next
+  void endPhase(String name) {
+    var now = System.nanoTime();
+    phaseNanos.merge(name, now - phaseStart, Long::sum);
+    phaseStart = now;
+    sampleHeap();
+  }
+
+  // Add time spent in the listener, which is taken out of the current phase
+  void addListenerTime(long nanos) {
+    listenerNanos += nanos;
+    phaseStart += nanos;
+    sampleHeap();
+  }
+
+  // A pool whose peak rose since the start reached it during the check,
+  // otherwise the most in use now is the best known for the check
+  private void sampleHeap() {
+    long peak = 0;
+    for (var i = 0; i < heapPools.size(); i++) {
+      var pool = heapPools.get(i);
+      var poolPeak = pool.getPeakUsage().getUsed();
+      peak += poolPeak > startPeakHeapBytes[i] ? poolPeak : pool.getUsage().getUsed();
+    }
+    peakHeapBytes = Math.max(peakHeapBytes, peak);
+  }
+
+  /** Wall time of each phase of the check, in the order they ran. */
+  public Map<String, Duration> getPhaseDurations() {
+    var durations = new LinkedHashMap<String, Duration>();
+    for (var entry : phaseNanos.entrySet()) {
+      durations.put(entry.getKey(), Duration.ofNanos(entry.getValue()));
+    }
+    return Collections.unmodifiableMap(durations);
+  }
+
+  /**
+   * Time spent in the {@link WorkflowCheck.Listener} (e.g. printing results
+   * for the check command), which is not part of any phase.
+   */
+  public Duration getListenerDuration() {
+    return Duration.ofNanos(listenerNanos);
+  }
+
+  /**
+   * Time spent parsing classes and method bodies, summed across threads. This
+   * overlaps the phases, since classes are parsed when first needed.
+   */
+  public Duration getParseDuration() {
+    return Duration.ofNanos(parseNanos.sum());
+  }
+
+  /** Number of classes listed on the scanned classpath entries. */
+  public long getClassesEnumerated() {
+    return classesEnumerated;
+  }
+
+  /** Number of classes parsed from their bytes. */
+  public long getClassesParsed() {
+    return classesParsed.sum();
+  }
+
+  /** Number of classes read from the disk or memory cache instead of parsed. */
+  public long getClassesFromCache() {
+    return classesFromCache.sum();
+  }
+
+  /** Number of standard library classes read from the bundled index. */
+  public long getClassesFromJdkIndex() {
+    return classesFromJdkIndex.sum();
+  }
+
+  /** Number of referenced classes that could not be found. */
+  public long getMissingClasses() {
+    return missingClasses.sum();
+  }
+
+  /** Number of class file bytes read, including reads for the prefilter. */
+  public long getBytesRead() {
+    return bytesRead.sum();
+  }
+
+  /** Number of method bodies parsed. */
+  public long getMethodBodiesParsed() {
+    return methodBodiesParsed;
+  }
+
+  /** Number of methods visited while processing method validity. */
+  public long getMethodsVisited() {
+    return methodsVisited;
+  }
+
+  /** Number of distinct call sites and static field accesses resolved. */
+  public long getCallSitesResolved() {
+    return callSitesResolved;
+  }
+
+  /** Number of class hierarchies built. */
+  public long getHierarchiesBuilt() {
+    return hierarchiesBuilt;
+  }
+
+  /**
+   * Number of classes evicted to stay under
+   * {@link WorkflowCheck.Options.Builder#setMaxLoadedClasses(int)}, including
+   * workflow classes evicted once checked.
+   */
+  public long getClassesEvicted() {
+    return classesEvicted;
+  }
+
+  /** Number of evicted classes that were needed again and loaded again. */
+  public long getClassesReloaded() {
+    return classesReloaded.sum();
+  }
+
+  /**
+   * Max bytes used by the heap of the JVM during the check, sampled at the
+   * end of each phase and after each listener call. The heap is of the entire
+   * JVM, so this includes anything else running in it (e.g. other checks in
+   * the same daemon or build worker). It is exact when the check raises the
+   * JVM's peak, and otherwise the most seen in use at a sample.
+   */
+  public long getPeakHeapBytes() {
+    return peakHeapBytes;
+  }
+
+  // Counter names and values, in the order they are shown
+  private Map<String, Long> counters() {
+    var counters = new LinkedHashMap<String, Long>();
+    counters.put("classesEnumerated", getClassesEnumerated());
+    counters.put("classesParsed", getClassesParsed());
+    counters.put("classesFromCache", getClassesFromCache());
+    counters.put("classesFromJdkIndex", getClassesFromJdkIndex());
+    counters.put("missingClasses", getMissingClasses());
+    counters.put("bytesRead", getBytesRead());
+    counters.put("methodBodiesParsed", getMethodBodiesParsed());
+    counters.put("methodsVisited", getMethodsVisited());
+    counters.put("callSitesResolved", getCallSitesResolved());
+    counters.put("hierarchiesBuilt", getHierarchiesBuilt());
+    counters.put("classesEvicted", getClassesEvicted());
+    counters.put("classesReloaded", getClassesReloaded());
+    counters.put("peakHeapBytes", getPeakHeapBytes());
+    return counters;
+  }
+
+  /** Human-readable multi-line text of the stats. */
+  public String toText() {
+    var bld = new StringBuilder("Workflow check stats:\n  Phases:\n");
+    long total = 0;
+    for (var entry : phaseNanos.entrySet()) {
+      bld.append(String.format("    %-24s %10.1f ms\n", entry.getKey(), entry.getValue() / 1e6));
+      total += entry.getValue();
+    }
+    bld.append(String.format("    %-24s %10.1f ms\n", "listener", listenerNanos / 1e6));
+    total += listenerNanos;
+    bld.append(String.format("    %-24s %10.1f ms\n", "total", total / 1e6));
+    bld.append(String.format("    %-24s %10.1f ms\n", "(parse, all threads)", parseNanos.sum() / 1e6));
+    bld.append("  Counters:\n");
+    for (var entry : counters().entrySet()) {
+      bld.append(String.format("    %-24s %,13d\n", entry.getKey(), entry.getValue()));
+    }
+    return bld.toString();
+  }
+
+  /** Single-line JSON object of the stats, with times in nanoseconds. */
+  public String toJson() {
+    var bld = new StringBuilder("{\"phaseNanos\":{");
+    var first = true;
+    for (var entry : phaseNanos.entrySet()) {
+      if (!first) {
+        bld.append(',');
+      }
+      first = false;
+      // Phase names are known not to need escaping
+      bld.append('"').append(entry.getKey()).append("\":").append(entry.getValue());
+    }
+    bld.append("},\"listenerNanos\":").append(listenerNanos);
+    bld.append(",\"parseNanos\":").append(parseNanos.sum());
+    for (var entry : counters().entrySet()) {
+      bld.append(",\"").append(entry.getKey()).append("\":").append(entry.getValue());
+    }
+    return bld.append('}').toString();
+  }
+}
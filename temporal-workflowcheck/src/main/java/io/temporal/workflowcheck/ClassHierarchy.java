@@ -0,0 +1,88 @@
+package io.temporal.workflowcheck;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * Linearized supertypes of a class, built once from the already-built
+ * hierarchies of its direct supertypes. The ancestors are in the order a
+ * depth-first walk (class, then super class, then super interfaces) first
+ * reaches them, each with the shortest depth it can be reached at.
+ */
+class ClassHierarchy {
+  // Index 0 is the class itself at depth 0
+  final ClassInfo[] ancestors;
+  final int[] depths;
+  // Sorted name symbol ids of all ancestors for assignability checks
+  private final int[] ancestorIds;
+  // Resolved implementations keyed by method name and descriptor symbol ids,
+  // filled in by the loader as calls are resolved
+  final Map<Long, MethodImpl> methodImpls = new HashMap<>();
+
+  ClassHierarchy(ClassInfo info, @Nullable ClassInfo superClass, @Nullable ClassInfo[] superInterfaces) {
+    var ancestors = new ArrayList<ClassInfo>();
+    var depths = new ArrayList<Integer>();
+    var indexes = new IdentityHashMap<ClassInfo, Integer>();
+    ancestors.add(info);
+    depths.add(0);
+    indexes.put(info, 0);
+    if (superClass != null) {
+      merge(superClass.hierarchy, ancestors, depths, indexes);
+    }
+    if (superInterfaces != null) {
+      for (var iface : superInterfaces) {
+        merge(iface.hierarchy, ancestors, depths, indexes);
+      }
+    }
+    this.ancestors = ancestors.toArray(new ClassInfo[0]);
+    this.depths = new int[depths.size()];
+    ancestorIds = new int[depths.size()];
+    for (var i = 0; i < this.ancestors.length; i++) {
+      this.depths[i] = depths.get(i);
+      ancestorIds[i] = this.ancestors[i].nameId;
+    }
+    Arrays.sort(ancestorIds);
+  }
+
+  private static void merge(
+          ClassHierarchy superHierarchy,
+          List<ClassInfo> ancestors,
+          List<Integer> depths,
+          Map<ClassInfo, Integer> indexes) {
+    for (var i = 0; i < superHierarchy.ancestors.length; i++) {
+      var ancestor = superHierarchy.ancestors[i];
+      var depth = superHierarchy.depths[i] + 1;
+      var index = indexes.get(ancestor);
+      if (index == null) {
+        indexes.put(ancestor, ancestors.size());
+        ancestors.add(ancestor);
+        depths.add(depth);
+      } else if (depth < depths.get(index)) {
+        depths.set(index, depth);
+      }
+    }
+  }
+
+  /** Whether the class is the class with the given name id or extends/implements it. */
+  boolean isAssignableTo(int classNameId) {
+    return Arrays.binarySearch(ancestorIds, classNameId) >= 0;
+  }
+
+  static long methodKey(int methodNameId, int methodDescriptorId) {
+    return ((long) methodNameId << 32) | (methodDescriptorId & 0xFFFFFFFFL);
+  }
+
+  // Most specific implementation of a method called on this class, or nulls
+  // if there is none with a body
+  static class MethodImpl {
+    @Nullable
+    final ClassInfo implClass;
+    @Nullable
+    final ClassInfo.MethodInfo implMethod;
+
+    MethodImpl(@Nullable ClassInfo implClass, @Nullable ClassInfo.MethodInfo implMethod) {
+      this.implClass = implClass;
+      this.implMethod = implMethod;
+    }
+  }
+}
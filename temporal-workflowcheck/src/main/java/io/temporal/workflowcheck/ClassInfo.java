@@ -13,6 +13,11 @@ public class ClassInfo {
   String superClass;
   @Nullable
   String[] superInterfaces;
+  // Symbol ids of the names above, set when loaded (0 for a null super class)
+  int nameId;
+  int superClassId;
+  @Nullable
+  int[] superInterfaceIds;
 
   // Keyed by method name, each is an overload in no particular order. This may
   // not include unimportant methods after processing.
@@ -22,6 +27,18 @@ public class ClassInfo {
   @Nullable
   Set<String> nonFinalStaticFields;
 
+  // Built by the loader when first needed, removed after processing
+  @Nullable
+  ClassHierarchy hierarchy;
+
+  // Number of methods whose bodies are not visited yet. They are all visited
+  // once one is needed.
+  int pendingBodies;
+
+  // Eviction step of the loader when the class was last loaded, so the least
+  // recently used are evicted first when the loaded classes are bounded
+  int lastUsed;
+
   /** JVM access flag for the class as defined in JVM spec. */
   public int getAccess() {
     return access;
@@ -62,7 +79,10 @@ public class ClassInfo {
   /** Information about a method. */
   public static class MethodInfo {
     final int access;
-    final String descriptor;
+    // Not final so it can be interned when loaded
+    String descriptor;
+    // Symbol id of the descriptor, set when loaded
+    int descriptorId;
     @Nullable
     final Boolean configuredInvalid;
     @Nullable
@@ -70,11 +90,15 @@ public class ClassInfo {
     // Set after loading
     @Nullable
     MethodWorkflowImplInfo workflowImpl;
+    // Class with the body of this method, set while the body is not visited
+    // yet. Method bodies are only visited when the method is processed.
+    @Nullable
+    ClassInfo bodyClass;
     // Removed after loading (if null then invalidMemberAccesses is now the
     // canonical set). May be null when loading if configuredInvalid already
     // set.
     @Nullable
-    List<MethodInvalidMemberAccessInfo> memberAccesses;
+    MethodMemberAccesses memberAccesses;
     // Set after loading (but can still be null), never non-null+empty
     @Nullable
     List<MethodInvalidMemberAccessInfo> invalidMemberAccesses;
@@ -132,6 +156,77 @@ public class ClassInfo {
     public boolean isInvalid() {
       return configuredInvalid != null ? configuredInvalid : invalidMemberAccesses != null;
     }
+
+    // Whether nothing on the method is needed once processing is done (i.e.
+    // it has no workflow info and is valid)
+    boolean isUnimportant() {
+      return workflowDecl == null &&
+              workflowImpl == null &&
+              (configuredInvalid == null || configuredInvalid) &&
+              invalidMemberAccesses == null;
+    }
+  }
+
+  // All member accesses of a method before processing, packed into a single
+  // int array since there are far more of these than anything else. Only the
+  // invalid ones become MethodInvalidMemberAccessInfo.
+  static class MethodMemberAccesses {
+    // Each access is the class name, member name, and member descriptor symbol
+    // ids, then the line plus 1 (0 if unknown) shifted left 2 with the
+    // operation ordinal (which must fit in 2 bits) in the low bits
+    private static final int STRIDE = 4;
+
+    private int[] data;
+    int size;
+
+    MethodMemberAccesses(int capacity) {
+      data = new int[capacity * STRIDE];
+    }
+
+    void add(
+            int classNameId,
+            int memberNameId,
+            int memberDescriptorId,
+            int line,
+            MethodInvalidMemberAccessInfo.Operation operation) {
+      var index = size * STRIDE;
+      if (index == data.length) {
+        data = Arrays.copyOf(data, data.length * 2);
+      }
+      data[index] = classNameId;
+      data[index + 1] = memberNameId;
+      data[index + 2] = memberDescriptorId;
+      data[index + 3] = ((line + 1) << 2) | operation.ordinal();
+      size++;
+    }
+
+    // Shrink to the size since these are retained until processed
+    void trim() {
+      if (size * STRIDE < data.length) {
+        data = Arrays.copyOf(data, size * STRIDE);
+      }
+    }
+
+    int classNameId(int index) {
+      return data[index * STRIDE];
+    }
+
+    int memberNameId(int index) {
+      return data[index * STRIDE + 1];
+    }
+
+    int memberDescriptorId(int index) {
+      return data[index * STRIDE + 2];
+    }
+
+    // -1 if unknown
+    int line(int index) {
+      return (data[index * STRIDE + 3] >>> 2) - 1;
+    }
+
+    MethodInvalidMemberAccessInfo.Operation operation(int index) {
+      return MethodInvalidMemberAccessInfo.Operation.VALUES[data[index * STRIDE + 3] & 3];
+    }
   }
 
   /** Information about a workflow method declaration. */
@@ -264,7 +359,9 @@ public class ClassInfo {
       METHOD_CALL,
       FIELD_STATIC_GET,
       FIELD_STATIC_PUT,
-      FIELD_CONFIGURED_INVALID,
+      FIELD_CONFIGURED_INVALID;
+
+      static final Operation[] VALUES = values();
     }
   }
 }
\ No newline at end of file
@@ -0,0 +1,469 @@
+package io.temporal.workflowcheck;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * On-disk and/or in-memory cache of parsed class information. Each classpath
+ * entry has its own cache file named after a hash of the entry's contents and
+ * the config, so a changed JAR, directory, or config just uses a different
+ * file. Class info is stored as it is after parsing, before any processing.
+ * Classes are first stored with only their headers, and stored again with
+ * the member accesses of their method bodies once those are visited, so later
+ * checks do not read the bodies from the classpath again. Bodies never needed
+ * are left pending and read from the classpath if a later check needs them.
+ */
+class ClassInfoCache {
+  private static final System.Logger logger = System.getLogger(ClassInfoCache.class.getName());
+
+  // Must be changed whenever the format or the parsing logic changes
+  private static final int VERSION = 3;
+  private static final int MAGIC = 0x57464343;
+
+  @Nullable
+  private final Path dir;
+  @Nullable
+  private final Memory memory;
+  private final byte[] configDigest;
+  private final Map<ClassPath.Entry, EntryCache> entryCaches = new ConcurrentHashMap<>();
+
+  ClassInfoCache(Path dir, Config config) throws IOException {
+    this(dir, null, config);
+  }
+
+  // At least one of the directory or memory must be present. When both are,
+  // memory is checked first and both are saved to.
+  ClassInfoCache(@Nullable Path dir, @Nullable Memory memory, Config config) throws IOException {
+    if (dir != null) {
+      Files.createDirectories(dir);
+    }
+    this.dir = dir;
+    this.memory = memory;
+    var digest = newDigest();
+    config.digest(digest);
+    configDigest = digest.digest();
+  }
+
+  /** Read the class from the cache, or null if not cached. */
+  @Nullable
+  ClassInfo read(ClassPath.Entry entry, String className, SymbolTable symbols) {
+    return entryCache(entry).read(className, symbols);
+  }
+
+  /**
+   * Write the freshly parsed class to the cache, or write it again once its
+   * pending bodies are visited.
+   */
+  void write(ClassPath.Entry entry, ClassInfo info, SymbolTable symbols) {
+    entryCache(entry).write(info, symbols);
+  }
+
+  /** Save the cache files for every entry that had newly parsed classes. */
+  void save() throws IOException {
+    for (var entryCache : entryCaches.values()) {
+      entryCache.save();
+    }
+  }
+
+  private EntryCache entryCache(ClassPath.Entry entry) {
+    return entryCaches.computeIfAbsent(entry, EntryCache::new);
+  }
+
+  private class EntryCache {
+    private final String fileName;
+    // Decompressed contents of the existing cache file, if any. This may be
+    // shared with the memory so it must never be changed.
+    @Nullable
+    private byte[] existing;
+    // Offset and length of each class record in the existing bytes
+    private final Map<String, int[]> existingRecords = new HashMap<>();
+    private final Map<String, byte[]> newRecords = new ConcurrentHashMap<>();
+
+    EntryCache(ClassPath.Entry entry) {
+      var digest = newDigest();
+      digest.update(intBytes(VERSION));
+      digest.update(configDigest);
+      try {
+        digestEntry(entry, digest);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      fileName = HexFormat.of().formatHex(digest.digest()) + ".bin";
+      existing = memory == null ? null : memory.get(fileName);
+      var file = dir == null ? null : dir.resolve(fileName);
+      try {
+        if (existing == null && file != null && Files.exists(file)) {
+          loadExistingFile(file);
+        }
+        if (existing != null) {
+          indexExisting();
+        }
+      } catch (IOException e) {
+        // A bad cache file is not fatal, we just re-parse
+        logger.log(System.Logger.Level.WARNING, "Ignoring unreadable cache file {0}: {1}", file, e);
+        existing = null;
+        existingRecords.clear();
+      }
+    }
+
+    private void loadExistingFile(Path file) throws IOException {
+      try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+          throw new IOException("Unrecognized cache file header");
+        }
+        existing = new InflaterInputStream(in).readAllBytes();
+      }
+      // Keep in memory for the next use
+      if (memory != null) {
+        memory.put(fileName, existing);
+      }
+    }
+
+    private void indexExisting() throws IOException {
+      var bytesIn = new ByteArrayInputStream(existing);
+      var in = new DataInputStream(bytesIn);
+      var count = in.readInt();
+      for (var i = 0; i < count; i++) {
+        var className = in.readUTF();
+        var length = in.readInt();
+        var offset = existing.length - bytesIn.available();
+        existingRecords.put(className, new int[]{offset, length});
+        in.skipNBytes(length);
+      }
+    }
+
+    @Nullable
+    ClassInfo read(String className, SymbolTable symbols) {
+      var record = existingRecords.get(className);
+      if (record == null) {
+        return null;
+      }
+      try {
+        return readClassInfo(new DataInputStream(new ByteArrayInputStream(existing, record[0], record[1])), symbols);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    void write(ClassInfo info, SymbolTable symbols) {
+      var bytes = new ByteArrayOutputStream();
+      try (var out = new DataOutputStream(bytes)) {
+        writeClassInfo(info, out, symbols);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      newRecords.put(info.name, bytes.toByteArray());
+    }
+
+    void save() throws IOException {
+      if (newRecords.isEmpty()) {
+        return;
+      }
+      // Build all existing records not replaced plus the new ones, sorted for
+      // deterministic output
+      var classNames = new TreeSet<>(existingRecords.keySet());
+      classNames.addAll(newRecords.keySet());
+      var bodyBytes = new ByteArrayOutputStream();
+      try (var body = new DataOutputStream(bodyBytes)) {
+        body.writeInt(classNames.size());
+        for (var className : classNames) {
+          body.writeUTF(className);
+          var newRecord = newRecords.get(className);
+          if (newRecord != null) {
+            body.writeInt(newRecord.length);
+            body.write(newRecord);
+          } else {
+            var record = existingRecords.get(className);
+            body.writeInt(record[1]);
+            body.write(existing, record[0], record[1]);
+          }
+        }
+      }
+      if (memory != null) {
+        memory.put(fileName, bodyBytes.toByteArray());
+      }
+      if (dir == null) {
+        return;
+      }
+      // Write to a temp file then move over
+      var temp = Files.createTempFile(dir, "cache", ".tmp");
+      try {
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+          out.writeInt(MAGIC);
+          out.writeInt(VERSION);
+          var body = new DeflaterOutputStream(out);
+          bodyBytes.writeTo(body);
+          body.finish();
+        }
+        Files.move(temp, dir.resolve(fileName), StandardCopyOption.REPLACE_EXISTING);
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    }
+  }
+
+  /**
+   * Decompressed cache file contents kept in memory across checks, keyed by
+   * cache file name. When over the max size, the least recently used contents
+   * are evicted. The content digests of JARs are also kept, keyed by path, so
+   * unchanged JARs are not read again to find their cache file.
+   */
+  static class Memory {
+    @Nullable
+    private static Memory shared;
+
+    // Memory shared by every check in the JVM, the latest max size applies
+    static synchronized Memory shared(long maxSize) {
+      if (shared == null) {
+        shared = new Memory(maxSize);
+      } else {
+        shared.setMaxSize(maxSize);
+      }
+      return shared;
+    }
+
+    private long maxSize;
+    private final LinkedHashMap<String, byte[]> contents = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+    // Keyed by JAR path. These are small, so they are not counted in the size.
+    private final Map<String, JarDigest> jarDigests = new HashMap<>();
+
+    Memory(long maxSize) {
+      this.maxSize = maxSize;
+    }
+
+    synchronized void setMaxSize(long maxSize) {
+      this.maxSize = maxSize;
+      evict();
+    }
+
+    @Nullable
+    synchronized byte[] get(String fileName) {
+      return contents.get(fileName);
+    }
+
+    synchronized void put(String fileName, byte[] bytes) {
+      var prev = contents.put(fileName, bytes);
+      if (prev != null) {
+        size -= prev.length;
+      }
+      size += bytes.length;
+      evict();
+    }
+
+    // Evict oldest first, which can be the newest if it alone is too big
+    private void evict() {
+      var iter = contents.values().iterator();
+      while (size > maxSize && iter.hasNext()) {
+        size -= iter.next().length;
+        iter.remove();
+      }
+    }
+
+    // Null if not known for the JAR with this size and modification time
+    @Nullable
+    synchronized byte[] jarDigest(String path, long size, long lastModified) {
+      var jarDigest = jarDigests.get(path);
+      if (jarDigest == null || jarDigest.size != size || jarDigest.lastModified != lastModified) {
+        return null;
+      }
+      return jarDigest.digest;
+    }
+
+    synchronized void putJarDigest(String path, long size, long lastModified, byte[] digest) {
+      jarDigests.put(path, new JarDigest(size, lastModified, digest));
+    }
+
+    private record JarDigest(long size, long lastModified, byte[] digest) {}
+
+    synchronized long size() {
+      return size;
+    }
+  }
+
+  private void digestEntry(ClassPath.Entry entry, MessageDigest digest) throws IOException {
+    if (!entry.directory) {
+      // JARs are keyed by a digest of their entire contents, which is only
+      // computed again by the memory when the size or modification time change
+      var path = entry.file.getAbsolutePath();
+      var size = entry.file.length();
+      var lastModified = entry.file.lastModified();
+      var jarDigest = memory == null ? null : memory.jarDigest(path, size, lastModified);
+      if (jarDigest == null) {
+        var contentDigest = newDigest();
+        try (var in = new DigestInputStream(Files.newInputStream(entry.file.toPath()), contentDigest)) {
+          in.transferTo(OutputStream.nullOutputStream());
+        }
+        jarDigest = contentDigest.digest();
+        if (memory != null) {
+          memory.putJarDigest(path, size, lastModified, jarDigest);
+        }
+      }
+      digest.update(jarDigest);
+      return;
+    }
+    // Directories are keyed by their path and the name, size, and modification
+    // time of every class file
+    digest.update(entry.file.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+    var classNames = entry.classes == null ? ClassPath.listClasses(entry) : new ArrayList<>(entry.classes);
+    classNames.sort(String::compareTo);
+    for (var className : classNames) {
+      var classFile = new File(entry.file, className + ".class");
+      digest.update(className.getBytes(StandardCharsets.UTF_8));
+      digest.update(longBytes(classFile.length()));
+      digest.update(longBytes(classFile.lastModified()));
+    }
+  }
+
+  static void writeClassInfo(ClassInfo info, DataOutputStream out, SymbolTable symbols) throws IOException {
+    out.writeInt(info.access);
+    out.writeUTF(info.name);
+    writeNullableUTF(info.fileName, out);
+    writeNullableUTF(info.superClass, out);
+    writeStrings(info.superInterfaces, out);
+    writeStrings(info.nonFinalStaticFields == null ? null : info.nonFinalStaticFields.toArray(new String[0]), out);
+    out.writeInt(info.methods.size());
+    for (var methods : info.methods.entrySet()) {
+      out.writeUTF(methods.getKey());
+      out.writeInt(methods.getValue().size());
+      for (var method : methods.getValue()) {
+        out.writeInt(method.access);
+        out.writeUTF(method.descriptor);
+        out.writeByte(method.configuredInvalid == null ? -1 : method.configuredInvalid ? 1 : 0);
+        out.writeByte(method.workflowDecl == null ? -1 : method.workflowDecl.kind.ordinal());
+        if (method.memberAccesses == null) {
+          out.writeInt(-1);
+        } else {
+          var accesses = method.memberAccesses;
+          out.writeInt(accesses.size);
+          for (var i = 0; i < accesses.size; i++) {
+            out.writeUTF(symbols.symbol(accesses.classNameId(i)));
+            out.writeUTF(symbols.symbol(accesses.memberNameId(i)));
+            out.writeUTF(symbols.symbol(accesses.memberDescriptorId(i)));
+            out.writeInt(accesses.line(i));
+            out.writeByte(accesses.operation(i).ordinal());
+          }
+        }
+        out.writeBoolean(method.bodyClass != null);
+      }
+    }
+  }
+
+  static ClassInfo readClassInfo(DataInputStream in, SymbolTable symbols) throws IOException {
+    var info = new ClassInfo();
+    info.access = in.readInt();
+    info.name = in.readUTF();
+    info.fileName = readNullableUTF(in);
+    info.superClass = readNullableUTF(in);
+    info.superInterfaces = readStrings(in);
+    var nonFinalStaticFields = readStrings(in);
+    if (nonFinalStaticFields != null) {
+      info.nonFinalStaticFields = new HashSet<>(Arrays.asList(nonFinalStaticFields));
+    }
+    var methodNameCount = in.readInt();
+    for (var i = 0; i < methodNameCount; i++) {
+      var methodName = in.readUTF();
+      var methodCount = in.readInt();
+      var methods = new ArrayList<ClassInfo.MethodInfo>(methodCount);
+      for (var j = 0; j < methodCount; j++) {
+        var access = in.readInt();
+        var descriptor = in.readUTF();
+        var configuredInvalid = in.readByte();
+        var method = new ClassInfo.MethodInfo(
+                access, descriptor, configuredInvalid == -1 ? null : configuredInvalid == 1);
+        var declKind = in.readByte();
+        if (declKind != -1) {
+          method.workflowDecl = new ClassInfo.MethodWorkflowDeclInfo(
+                  ClassInfo.MethodWorkflowDeclInfo.Kind.values()[declKind]);
+        }
+        var accessCount = in.readInt();
+        if (accessCount >= 0) {
+          method.memberAccesses = new ClassInfo.MethodMemberAccesses(Math.max(accessCount, 1));
+          for (var k = 0; k < accessCount; k++) {
+            method.memberAccesses.add(
+                    symbols.id(in.readUTF()),
+                    symbols.id(in.readUTF()),
+                    symbols.id(in.readUTF()),
+                    in.readInt(),
+                    ClassInfo.MethodInvalidMemberAccessInfo.Operation.VALUES[in.readByte()]);
+          }
+        }
+        if (in.readBoolean()) {
+          method.bodyClass = info;
+          info.pendingBodies++;
+        }
+        methods.add(method);
+      }
+      info.methods.put(methodName, methods);
+    }
+    return info;
+  }
+
+  private static void writeNullableUTF(@Nullable String str, DataOutputStream out) throws IOException {
+    out.writeBoolean(str != null);
+    if (str != null) {
+      out.writeUTF(str);
+    }
+  }
+
+  @Nullable
+  private static String readNullableUTF(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static void writeStrings(@Nullable String[] strs, DataOutputStream out) throws IOException {
+    if (strs == null) {
+      out.writeInt(-1);
+      return;
+    }
+    out.writeInt(strs.length);
+    for (var str : strs) {
+      out.writeUTF(str);
+    }
+  }
+
+  @Nullable
+  private static String[] readStrings(DataInputStream in) throws IOException {
+    var count = in.readInt();
+    if (count == -1) {
+      return null;
+    }
+    var strs = new String[count];
+    for (var i = 0; i < count; i++) {
+      strs[i] = in.readUTF();
+    }
+    return strs;
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static byte[] intBytes(int v) {
+    return new byte[]{(byte) (v >>> 24), (byte) (v >>> 16), (byte) (v >>> 8), (byte) v};
+  }
+
+  private static byte[] longBytes(long v) {
+    var bytes = new byte[8];
+    for (var i = 7; i >= 0; i--) {
+      bytes[i] = (byte) v;
+      v >>>= 8;
+    }
+    return bytes;
+  }
+}
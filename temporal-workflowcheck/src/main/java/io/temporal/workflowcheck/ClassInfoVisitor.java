@@ -11,23 +11,57 @@ import java.util.List;
  * Visitor that visits the bytecode of a class. This is intentionally meant to
  * be fast and have no recursion or other reliance on the visiting of other
  * classes. Successive phases tie class information together.
+ * <p>
+ * A class is first visited without code (i.e. with
+ * {@link ClassReader#SKIP_CODE}) to get the class and method headers, leaving
+ * every method with a body pending. Every pending body of the class is then
+ * visited at once with {@link #visitBodies} when the first one is needed, so
+ * classes that are only loaded for their headers (e.g. supertypes) never have
+ * their bodies visited.
  */
 class ClassInfoVisitor extends ClassVisitor {
   private static final System.Logger logger = System.getLogger(ClassInfoVisitor.class.getName());
 
-  final ClassInfo classInfo = new ClassInfo();
+  final ClassInfo classInfo;
   private final Config config;
+  private final SymbolTable symbols;
   private final MethodHandler methodHandler = new MethodHandler();
+  // Whether visiting the pending bodies instead of the headers
+  private final boolean visitingBodies;
   @Nullable
   private SuppressionStack suppressionStack;
 
-  ClassInfoVisitor(Config config) {
+  ClassInfoVisitor(Config config, SymbolTable symbols) {
+    this(config, symbols, new ClassInfo(), false);
+  }
+
+  private ClassInfoVisitor(Config config, SymbolTable symbols, ClassInfo classInfo, boolean visitingBodies) {
     super(Opcodes.ASM9);
     this.config = config;
+    this.symbols = symbols;
+    this.classInfo = classInfo;
+    this.visitingBodies = visitingBodies;
+  }
+
+  /**
+   * Visit every pending body of the class in a single pass, setting their
+   * member accesses. The reader must be of the bytes of the class the headers
+   * came from. Methods whose bodies are not pending (e.g. already processed
+   * ones put back after eviction) are skipped, and class level suppressions
+   * are applied like they are when visiting every method.
+   */
+  static void visitBodies(Config config, SymbolTable symbols, ClassReader reader, ClassInfo classInfo) {
+    var visitor = new ClassInfoVisitor(config, symbols, classInfo, true);
+    reader.accept(visitor, ClassReader.SKIP_FRAMES);
+    classInfo.pendingBodies = 0;
   }
 
   @Override
   public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+    // Headers are already set (and interned) when visiting bodies
+    if (visitingBodies) {
+      return;
+    }
     classInfo.access = access;
     classInfo.name = name;
     classInfo.superClass = superName;
@@ -41,13 +75,15 @@ class ClassInfoVisitor extends ClassVisitor {
 
   @Override
   public void visitSource(String source, String debug) {
-    classInfo.fileName = source;
+    if (!visitingBodies) {
+      classInfo.fileName = source;
+    }
   }
 
   @Override
   public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
     // Record all static non-final fields
-    if ((access & Opcodes.ACC_FINAL) == 0 && (access & Opcodes.ACC_STATIC) != 0) {
+    if (!visitingBodies && (access & Opcodes.ACC_FINAL) == 0 && (access & Opcodes.ACC_STATIC) != 0) {
       if (classInfo.nonFinalStaticFields == null) {
         classInfo.nonFinalStaticFields = new HashSet<>();
       }
@@ -60,11 +96,28 @@ class ClassInfoVisitor extends ClassVisitor {
 
   @Override
   public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
-    // Add method to class
+    // When visiting bodies, only visit the pending ones. Returning null skips
+    // the rest entirely.
+    if (visitingBodies) {
+      var bodyMethod = pendingBodyMethod(name, descriptor);
+      if (bodyMethod == null) {
+        return null;
+      }
+      bodyMethod.bodyClass = null;
+      methodHandler.reset(name, bodyMethod);
+      return methodHandler;
+    }
+
+    // Add method to class. Bodies are only needed for member accesses, so
+    // there is no pending body if the method has no code or is configured.
     var methodInfo = new ClassInfo.MethodInfo(
             access,
             descriptor,
             config.invalidMembers.check(classInfo.name, name, descriptor));
+    if (methodInfo.configuredInvalid == null && (access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) == 0) {
+      methodInfo.bodyClass = classInfo;
+      classInfo.pendingBodies++;
+    }
     classInfo.methods.computeIfAbsent(name, k -> new ArrayList<>()).add(methodInfo);
 
     // Reset and reuse the handler
@@ -72,6 +125,20 @@ class ClassInfoVisitor extends ClassVisitor {
     return methodHandler;
   }
 
+  // The method of the name and descriptor if its body is pending
+  @Nullable
+  private ClassInfo.MethodInfo pendingBodyMethod(String name, String descriptor) {
+    var methods = classInfo.methods.get(name);
+    if (methods != null) {
+      for (var method : methods) {
+        if (method.bodyClass == classInfo && method.descriptor.equals(descriptor)) {
+          return method;
+        }
+      }
+    }
+    return null;
+  }
+
   private AnnotationVisitor maybeSuppressionAttributeHandler(String descriptor) {
     if (descriptor.equals("Lio/temporal/workflowcheck/WorkflowCheck$SuppressWarnings;")) {
       return new SuppressionAttributeHandler();
@@ -140,8 +207,10 @@ class ClassInfoVisitor extends ClassVisitor {
         return suppressionVisitor;
       }
 
-      // If this descriptor is a known workflow decl kind, set as a decl
-      var declKind = ClassInfo.MethodWorkflowDeclInfo.Kind.annotationDescriptors.get(descriptor);
+      // If this descriptor is a known workflow decl kind, set as a decl (only
+      // when visiting headers, bodies have it already)
+      var declKind = visitingBodies ? null :
+              ClassInfo.MethodWorkflowDeclInfo.Kind.annotationDescriptors.get(descriptor);
       if (declKind != null) {
         logger.log(System.Logger.Level.DEBUG, "Found workflow method decl on {0}.{1}", classInfo.name, methodName);
         methodInfo.workflowDecl = new ClassInfo.MethodWorkflowDeclInfo(declKind);
@@ -156,6 +225,9 @@ class ClassInfoVisitor extends ClassVisitor {
 
     @Override
     public void visitEnd() {
+      if (methodInfo.memberAccesses != null) {
+        methodInfo.memberAccesses.trim();
+      }
       // Pop any remaining suppressions
       if (suppressionStack != null && methodSuppressions > 0) {
         for (var i = 0; i < methodSuppressions; i++) {
@@ -194,11 +266,7 @@ class ClassInfoVisitor extends ClassVisitor {
       // it is worth the extra memory to capture _all_ calls up front and
       // post-process whether they're invalid. This makes all method signatures
       // available for resolution at invalid-check time.
-      if (methodInfo.memberAccesses == null) {
-        methodInfo.memberAccesses = new ArrayList<>();
-      }
-      methodInfo.memberAccesses.add(new ClassInfo.MethodInvalidMemberAccessInfo(
-              owner, name, descriptor, methodLineNumber, ClassInfo.MethodInvalidMemberAccessInfo.Operation.METHOD_CALL));
+      addMemberAccess(owner, name, descriptor, ClassInfo.MethodInvalidMemberAccessInfo.Operation.METHOD_CALL);
     }
 
     @Override
@@ -218,12 +286,8 @@ class ClassInfoVisitor extends ClassVisitor {
       var invalid = config.invalidMembers.check(owner, name, null);
       if (invalid != null) {
         if (invalid) {
-          if (methodInfo.memberAccesses == null) {
-            methodInfo.memberAccesses = new ArrayList<>();
-          }
-          methodInfo.memberAccesses.add(new ClassInfo.MethodInvalidMemberAccessInfo(
-                  owner, name, descriptor, methodLineNumber,
-                  ClassInfo.MethodInvalidMemberAccessInfo.Operation.FIELD_CONFIGURED_INVALID));
+          addMemberAccess(owner, name, descriptor,
+                  ClassInfo.MethodInvalidMemberAccessInfo.Operation.FIELD_CONFIGURED_INVALID);
         }
         return;
       }
@@ -231,15 +295,20 @@ class ClassInfoVisitor extends ClassVisitor {
       // Check if this is getting/putting a static field. We don't check
       // whether the field is final or not until post-processing.
       if (opcode == Opcodes.GETSTATIC || opcode == Opcodes.PUTSTATIC) {
-          if (methodInfo.memberAccesses == null) {
-            methodInfo.memberAccesses = new ArrayList<>();
-          }
-          methodInfo.memberAccesses.add(new ClassInfo.MethodInvalidMemberAccessInfo(
-                  owner, name, descriptor, methodLineNumber,
-                  opcode == Opcodes.GETSTATIC ?
-                          ClassInfo.MethodInvalidMemberAccessInfo.Operation.FIELD_STATIC_GET :
-                          ClassInfo.MethodInvalidMemberAccessInfo.Operation.FIELD_STATIC_PUT));
+        addMemberAccess(owner, name, descriptor,
+                opcode == Opcodes.GETSTATIC ?
+                        ClassInfo.MethodInvalidMemberAccessInfo.Operation.FIELD_STATIC_GET :
+                        ClassInfo.MethodInvalidMemberAccessInfo.Operation.FIELD_STATIC_PUT);
+      }
+    }
+
+    private void addMemberAccess(
+            String owner, String name, String descriptor, ClassInfo.MethodInvalidMemberAccessInfo.Operation operation) {
+      if (methodInfo.memberAccesses == null) {
+        methodInfo.memberAccesses = new ClassInfo.MethodMemberAccesses(8);
       }
+      methodInfo.memberAccesses.add(symbols.id(owner), symbols.id(name), symbols.id(descriptor),
+              methodLineNumber == null ? -1 : methodLineNumber, operation);
     }
 
     // True if instruction should not be checked for invalidity
@@ -1,17 +1,29 @@
 package io.temporal.workflowcheck;
 
+import javax.annotation.Nullable;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.ZipFile;
 
 /**
- * Classpath helpers for a class loader to get all classes.
+ * Classpath helpers for a class loader to get all classes. Classes are only
+ * listed for the entries to scan. Classes in the other entries are only looked
+ * up when needed.
  */
 class ClassPath implements AutoCloseable {
   static boolean isStandardLibraryClass(String name) {
@@ -21,12 +33,46 @@ class ClassPath implements AutoCloseable {
             name.startsWith("com/sun/");
   }
 
+  // Only used for classes not in an entry (i.e. standard library classes)
   final URLClassLoader classLoader;
-  // Non-standard-library classes only here
+  // Non-standard-library classes in the entries to scan only here
   final List<String> classes = new ArrayList<>();
+  final List<Entry> entries = new ArrayList<>();
+  // Entry each non-standard-library class is loaded from. Like a class loader,
+  // the first entry containing a class wins. This has every class of the
+  // entries to scan, and classes of the other entries are added as they are
+  // looked up (concurrently when loading classes in parallel).
+  private final Map<String, Entry> classEntries = new ConcurrentHashMap<>();
+  // Classes already looked up that are not in any entry
+  private final Set<String> missingClasses = ConcurrentHashMap.newKeySet();
+  // Whether any entry is not listed up front
+  private boolean anyUnlisted;
 
+  /** Create a classpath that scans every entry. */
   ClassPath(String... classPaths) throws IOException {
+    this(classPaths, new String[0]);
+  }
+
+  /**
+   * Create a classpath that scans the entries of the scan classpaths, followed
+   * by the entries of the other classpaths that are not in the scan
+   * classpaths.
+   */
+  ClassPath(String[] scanClassPaths, String[] classPaths) throws IOException {
     var urls = new ArrayList<URL>();
+    try {
+      addEntries(scanClassPaths, true, urls);
+      addEntries(classPaths, false, urls);
+    } catch (IOException | RuntimeException e) {
+      closeJars();
+      throw e;
+    }
+    classLoader = new URLClassLoader(urls.toArray(new URL[0]));
+    // Sort the classes to loaded in a deterministic order
+    classes.sort(String::compareTo);
+  }
+
+  private void addEntries(String[] classPaths, boolean scan, List<URL> urls) throws IOException {
     for (var classPath : classPaths) {
       // If there is an `@` sign starting the classPath, instead read from a file
       if (classPath.startsWith("@")) {
@@ -35,21 +81,96 @@ class ClassPath implements AutoCloseable {
       // Split and handle each entry
       for (var entry : classPath.split(File.pathSeparator)) {
         var file = new File(entry);
-        // Like javac and others, we just ignore non-existing entries
-        if (file.exists()) {
+        // Like javac and others, we just ignore non-existing entries. The
+        // classpath usually also has the entries to scan, so those are not
+        // added again.
+        if (file.exists() && (scan || !hasEntry(file))) {
+          var event = new Events.EnumerateEntry();
+          event.begin();
+          Entry added = null;
           if (file.isDirectory()) {
             urls.add(file.toURI().toURL());
-            findClassesInDir("", file, classes);
+            added = new Entry(file, null);
           } else if (entry.endsWith(".jar")) {
             urls.add(file.getAbsoluteFile().toURI().toURL());
-            findClassesInJar(file, classes);
+            // Like class loaders, we open JARs for the runtime version so the
+            // proper multi-release entries are read. The file is kept open to
+            // read classes from.
+            added = new Entry(file, new JarFile(file, true, ZipFile.OPEN_READ, Runtime.version()));
+          }
+          if (added != null) {
+            addEntry(added, scan);
+            if (event.shouldCommit()) {
+              event.entry = file.getPath();
+              event.scanned = scan;
+              event.classCount = added.classes == null ? 0 : added.classes.size();
+              event.commit();
+            }
           }
         }
       }
     }
-    classLoader = new URLClassLoader(urls.toArray(new URL[0]));
-    // Sort the classes to loaded in a deterministic order
-    classes.sort(String::compareTo);
+  }
+
+  private boolean hasEntry(File file) {
+    var absoluteFile = file.getAbsoluteFile();
+    for (var entry : entries) {
+      if (entry.file.getAbsoluteFile().equals(absoluteFile)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void addEntry(Entry entry, boolean scan) {
+    entries.add(entry);
+    if (!scan) {
+      anyUnlisted = true;
+      return;
+    }
+    entry.classes = listClasses(entry);
+    for (var className : entry.classes) {
+      if (classEntries.putIfAbsent(className, entry) == null) {
+        classes.add(className);
+      }
+    }
+  }
+
+  /** List the non-standard-library classes in the entry. */
+  static List<String> listClasses(Entry entry) {
+    var classes = new ArrayList<String>();
+    if (entry.jarFile == null) {
+      findClassesInDir("", entry.file, classes);
+    } else {
+      findClassesInJar(entry.jarFile, classes);
+    }
+    return classes;
+  }
+
+  /**
+   * Get the entry the class is loaded from, or null if the class is not in an
+   * entry. Standard library classes are never in an entry.
+   */
+  @Nullable
+  Entry entry(String className) {
+    var entry = classEntries.get(className);
+    if (entry != null || !anyUnlisted || isStandardLibraryClass(className) || missingClasses.contains(className)) {
+      return entry;
+    }
+    // Look through the unlisted entries in order. Listed entries are all
+    // before them, and the class would be in the map if it was in one.
+    for (var candidate : entries) {
+      if (candidate.classes == null && candidate.hasClass(className)) {
+        entry = candidate;
+        break;
+      }
+    }
+    if (entry == null) {
+      missingClasses.add(className);
+      return null;
+    }
+    var existing = classEntries.putIfAbsent(className, entry);
+    return existing == null ? entry : existing;
   }
 
   private static void findClassesInDir(String path, File dir, List<String> classes) {
@@ -66,14 +187,12 @@ class ClassPath implements AutoCloseable {
     }
   }
 
-  private static void findClassesInJar(File jar, List<String> classes) throws IOException {
-    try (var jarFile = new JarFile(jar)) {
-      var entries = jarFile.entries();
-      while (entries.hasMoreElements()) {
-        var entry = entries.nextElement();
-        if (entry.getName().endsWith(".class")) {
-          addClass(entry.getName(), classes);
-        }
+  private static void findClassesInJar(JarFile jarFile, List<String> classes) {
+    var entries = jarFile.entries();
+    while (entries.hasMoreElements()) {
+      var entry = entries.nextElement();
+      if (entry.getName().endsWith(".class")) {
+        addClass(entry.getName(), classes);
       }
     }
   }
@@ -87,8 +206,137 @@ class ClassPath implements AutoCloseable {
     }
   }
 
+  /**
+   * Read the bytes of the class into the given buffer from the entry the class
+   * is in, or return false if the class is not in an entry. This reads
+   * straight from the open JAR or the file into the buffer, growing it as
+   * needed, so the buffer can be reused across classes.
+   */
+  boolean readClass(String className, ClassBytes into) throws IOException {
+    var entry = entry(className);
+    if (entry == null) {
+      return false;
+    }
+    if (entry.jarFile == null) {
+      try (var channel = FileChannel.open(new File(entry.file, className + ".class").toPath())) {
+        into.reset((int) channel.size());
+        var buf = ByteBuffer.wrap(into.bytes, 0, into.length);
+        while (buf.hasRemaining()) {
+          if (channel.read(buf) == -1) {
+            throw new EOFException("Unexpected end of " + className);
+          }
+        }
+      }
+      return true;
+    }
+    var jarEntry = entry.jarFile.getJarEntry(className + ".class");
+    if (jarEntry == null) {
+      return false;
+    }
+    try (var is = entry.jarFile.getInputStream(jarEntry)) {
+      var size = jarEntry.getSize();
+      if (size >= 0) {
+        into.reset((int) size);
+        if (is.readNBytes(into.bytes, 0, into.length) != into.length) {
+          throw new EOFException("Unexpected end of " + className);
+        }
+      } else {
+        // Size is unknown, so just grow as needed
+        into.reset(0);
+        int read;
+        while ((read = is.read(into.bytes, into.length, into.bytes.length - into.length)) != -1) {
+          into.length += read;
+          if (into.length == into.bytes.length) {
+            into.bytes = Arrays.copyOf(into.bytes, into.bytes.length * 2);
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Get a hash of the contents of the class from the entry the class is in, or
+   * return null if the class is not in an entry. This is the size and CRC of
+   * the contents, which for JARs are usually already stored for the entry.
+   */
+  @Nullable
+  Long contentHash(String className) throws IOException {
+    var entry = entry(className);
+    if (entry == null) {
+      return null;
+    }
+    byte[] bytes;
+    if (entry.jarFile == null) {
+      bytes = Files.readAllBytes(new File(entry.file, className + ".class").toPath());
+    } else {
+      var jarEntry = entry.jarFile.getJarEntry(className + ".class");
+      if (jarEntry == null) {
+        return null;
+      } else if (jarEntry.getSize() >= 0 && jarEntry.getCrc() >= 0) {
+        return (jarEntry.getSize() << 32) | jarEntry.getCrc();
+      }
+      // Size or CRC not known up front, so read it
+      try (var is = entry.jarFile.getInputStream(jarEntry)) {
+        bytes = is.readAllBytes();
+      }
+    }
+    var crc = new CRC32();
+    crc.update(bytes);
+    return ((long) bytes.length << 32) | crc.getValue();
+  }
+
+  /** A single directory or JAR on the classpath. */
+  static class Entry {
+    final File file;
+    final boolean directory;
+    // Open JAR, or null if a directory
+    @Nullable
+    final JarFile jarFile;
+    // Non-standard-library classes in this entry, even if an earlier entry
+    // has the same class, or null if the classes are not listed up front
+    @Nullable
+    List<String> classes;
+
+    Entry(File file, @Nullable JarFile jarFile) {
+      this.file = file;
+      this.directory = jarFile == null;
+      this.jarFile = jarFile;
+    }
+
+    boolean hasClass(String className) {
+      if (jarFile == null) {
+        return new File(file, className + ".class").isFile();
+      }
+      return jarFile.getJarEntry(className + ".class") != null;
+    }
+  }
+
+  /** Reusable buffer for class bytes, not thread safe. */
+  static class ClassBytes {
+    byte[] bytes = new byte[16 * 1024];
+    int length;
+
+    // Set the length, growing the buffer if needed
+    void reset(int length) {
+      if (bytes.length < length) {
+        bytes = new byte[Math.max(length, bytes.length * 2)];
+      }
+      this.length = length;
+    }
+  }
+
   @Override
   public void close() throws IOException {
     classLoader.close();
+    closeJars();
+  }
+
+  private void closeJars() throws IOException {
+    for (var entry : entries) {
+      if (entry.jarFile != null) {
+        entry.jarFile.close();
+      }
+    }
   }
 }
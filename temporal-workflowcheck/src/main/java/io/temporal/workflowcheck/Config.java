@@ -1,6 +1,7 @@
 package io.temporal.workflowcheck;
 
 import java.io.IOException;
+import java.security.MessageDigest;
 import java.util.Properties;
 
 /**
@@ -34,4 +35,10 @@ public class Config {
   private Config(DescriptorMatcher invalidMembers) {
     this.invalidMembers = invalidMembers;
   }
+
+  // Updates the digest with everything in this config that can affect the
+  // results of checking
+  void digest(MessageDigest digest) {
+    invalidMembers.digest(digest);
+  }
 }
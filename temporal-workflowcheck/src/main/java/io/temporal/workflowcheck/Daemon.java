@@ -0,0 +1,243 @@
+package io.temporal.workflowcheck;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Long-lived process that runs checks sent by clients over a local socket. The
+ * JVM stays warm between checks and parsed class information for unchanged
+ * classpath entries is kept in memory, up to a max size. Requests are run one
+ * at a time in the order they are accepted.
+ */
+class Daemon {
+  private static final System.Logger logger = System.getLogger(Daemon.class.getName());
+
+  // Must be changed whenever the protocol changes
+  private static final int VERSION = 1;
+  private static final int MAGIC = 0x57464344;
+
+  static final String COMMAND_CHECK = "check";
+  static final String COMMAND_STOP = "stop";
+
+  // Frames sent back to the client, each output frame is followed by a length
+  // and bytes and the exit frame by the exit code
+  private static final byte FRAME_OUT = 1;
+  private static final byte FRAME_ERR = 2;
+  private static final byte FRAME_EXIT = 3;
+
+  private final Path socketFile;
+  private final Duration idleTimeout;
+  private final ClassInfoCache.Memory cacheMemory;
+
+  Daemon(Path socketFile, Duration idleTimeout, long maxCacheSize) {
+    this.socketFile = socketFile;
+    this.idleTimeout = idleTimeout;
+    this.cacheMemory = new ClassInfoCache.Memory(maxCacheSize);
+  }
+
+  /** Run requests until stopped or idle for longer than the idle timeout. */
+  void run() throws IOException {
+    // A socket file left behind by a daemon that did not shut down cleanly is
+    // removed, but one that is still listening is not replaced
+    if (Files.exists(socketFile)) {
+      if (isListening(socketFile)) {
+        throw new IOException("Daemon already listening on " + socketFile);
+      }
+      Files.delete(socketFile);
+    }
+    try (var server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+         var selector = Selector.open()) {
+      server.bind(UnixDomainSocketAddress.of(socketFile));
+      server.configureBlocking(false);
+      server.register(selector, SelectionKey.OP_ACCEPT);
+      logger.log(System.Logger.Level.INFO, "Daemon listening on {0}", socketFile);
+      while (true) {
+        if (selector.select(idleTimeout.toMillis()) == 0) {
+          logger.log(System.Logger.Level.INFO, "Daemon idle for {0}, shutting down", idleTimeout);
+          return;
+        }
+        selector.selectedKeys().clear();
+        var channel = server.accept();
+        if (channel == null) {
+          continue;
+        }
+        channel.configureBlocking(true);
+        try (channel) {
+          if (!handle(channel)) {
+            logger.log(System.Logger.Level.INFO, "Daemon stopped");
+            return;
+          }
+        } catch (IOException e) {
+          // A bad or abandoned request is not fatal to the daemon
+          logger.log(System.Logger.Level.WARNING, "Failed handling daemon request: {0}", e);
+        }
+      }
+    } finally {
+      Files.deleteIfExists(socketFile);
+    }
+  }
+
+  // Returns false if the daemon should stop
+  private boolean handle(SocketChannel channel) throws IOException {
+    var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+    var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+    if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+      throw new IOException("Unrecognized daemon request header");
+    }
+    var command = readString(in);
+    var args = new String[in.readInt()];
+    for (var i = 0; i < args.length; i++) {
+      args[i] = readString(in);
+    }
+    if (COMMAND_STOP.equals(command)) {
+      writeExit(out, 0);
+      return false;
+    } else if (!COMMAND_CHECK.equals(command)) {
+      throw new IOException("Unrecognized daemon command: " + command);
+    }
+
+    var stdout = new PrintStream(new BufferedOutputStream(new FrameOutputStream(out, FRAME_OUT)),
+            true, StandardCharsets.UTF_8);
+    var stderr = new PrintStream(new BufferedOutputStream(new FrameOutputStream(out, FRAME_ERR)),
+            true, StandardCharsets.UTF_8);
+    int exitCode;
+    try {
+      exitCode = Main.check(args, stdout, stderr, cacheMemory);
+    } catch (IOException | RuntimeException e) {
+      stderr.println("Check failed: " + e);
+      exitCode = 1;
+    }
+    stdout.flush();
+    stderr.flush();
+    writeExit(out, exitCode);
+    logger.log(System.Logger.Level.INFO, "Check finished with exit code {0}, {1} byte(s) of parsed classes in memory",
+            exitCode, cacheMemory.size());
+    return true;
+  }
+
+  /**
+   * Send a request to the daemon listening on the socket file, printing the
+   * output of the request as it arrives. Returns the exit code of the request,
+   * or null if no daemon is listening.
+   */
+  @Nullable
+  static Integer send(Path socketFile, String command, String[] args, PrintStream out, PrintStream err)
+          throws IOException {
+    SocketChannel channel;
+    try {
+      channel = SocketChannel.open(UnixDomainSocketAddress.of(socketFile));
+    } catch (IOException e) {
+      return null;
+    }
+    try (channel) {
+      var reqOut = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+      reqOut.writeInt(MAGIC);
+      reqOut.writeInt(VERSION);
+      writeString(command, reqOut);
+      reqOut.writeInt(args.length);
+      for (var arg : args) {
+        writeString(arg, reqOut);
+      }
+      reqOut.flush();
+
+      var respIn = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+      while (true) {
+        byte frame;
+        try {
+          frame = respIn.readByte();
+        } catch (EOFException e) {
+          throw new IOException("Daemon closed connection before finishing request");
+        }
+        switch (frame) {
+          case FRAME_OUT, FRAME_ERR -> {
+            var bytes = new byte[respIn.readInt()];
+            respIn.readFully(bytes);
+            var stream = frame == FRAME_OUT ? out : err;
+            stream.write(bytes);
+            stream.flush();
+          }
+          case FRAME_EXIT -> {
+            return respIn.readInt();
+          }
+          default -> throw new IOException("Unrecognized daemon response frame " + frame);
+        }
+      }
+    }
+  }
+
+  private static boolean isListening(Path socketFile) {
+    try {
+      SocketChannel.open(UnixDomainSocketAddress.of(socketFile)).close();
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static void writeExit(DataOutputStream out, int exitCode) throws IOException {
+    synchronized (out) {
+      out.writeByte(FRAME_EXIT);
+      out.writeInt(exitCode);
+      out.flush();
+    }
+  }
+
+  // Strings can be longer than writeUTF allows (e.g. classpaths)
+  private static void writeString(String str, DataOutputStream out) throws IOException {
+    var bytes = str.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    var bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  // Sends everything written as frames of the given type
+  private static class FrameOutputStream extends OutputStream {
+    private final DataOutputStream out;
+    private final byte frame;
+
+    private FrameOutputStream(DataOutputStream out, byte frame) {
+      this.out = out;
+      this.frame = frame;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return;
+      }
+      synchronized (out) {
+        out.writeByte(frame);
+        out.writeInt(len);
+        out.write(b, off, len);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      synchronized (out) {
+        out.flush();
+      }
+    }
+  }
+}
@@ -1,58 +1,108 @@
 package io.temporal.workflowcheck;
 
 import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
 
 /**
  * Matcher for a set of descriptors. Pattern is
  * <code>[[qualified/class/]Name.]memberName[(Lthe/Method/Desc;)V]</code>.
+ *
+ * The descriptors are compiled once into an open-addressing hash table whose
+ * hashes are compatible with {@link String#hashCode()}. This lets every
+ * candidate key be hashed and compared as ranges of the given class name,
+ * member name, and descriptor, so checking does not allocate.
  */
 class DescriptorMatcher {
   private final Map<String, Boolean> descriptors;
+  // Table slots, capacity is a power of two at least twice the descriptor
+  // count. A null key is an empty slot.
+  private final String[] keys;
+  private final int[] hashes;
+  private final boolean[] values;
+  private final int mask;
 
   DescriptorMatcher(Map<String, Boolean> descriptors) {
     this.descriptors = descriptors;
+    var capacity = Integer.highestOneBit(Math.max(descriptors.size(), 1) * 2 - 1) << 1;
+    keys = new String[capacity];
+    hashes = new int[capacity];
+    values = new boolean[capacity];
+    mask = capacity - 1;
+    for (var entry : descriptors.entrySet()) {
+      var key = entry.getKey();
+      var hash = key.hashCode();
+      var slot = hash & mask;
+      while (keys[slot] != null) {
+        slot = (slot + 1) & mask;
+      }
+      keys[slot] = key;
+      hashes[slot] = hash;
+      values[slot] = entry.getValue();
+    }
   }
 
   DescriptorMatcher(String category, Properties[] propSets) {
-    this(new HashMap<>());
+    this(fromProperties(category, propSets));
+  }
+
+  DescriptorMatcher(String[] positiveMatches) {
+    this(fromPositiveMatches(positiveMatches));
+  }
+
+  private static Map<String, Boolean> fromProperties(String category, Properties[] propSets) {
+    var descriptors = new HashMap<String, Boolean>();
+    var prefix = "temporal.workflowcheck." + category + ".";
     for (var props : propSets) {
-      addFromProperties(category, props);
+      for (var entry : props.entrySet()) {
+        // Key is temporal.workflowcheck.<category>.<pattern>=<true|false>
+        var key = (String) entry.getKey();
+        if (!key.startsWith(prefix)) {
+          continue;
+        }
+        // Sanity check to confirm methods with descriptors need to _not_ have
+        // return values
+        var closeParenIndex = key.lastIndexOf(')');
+        if (closeParenIndex > 0 && closeParenIndex != key.length() - 1) {
+          throw new IllegalArgumentException("Config key '" + key + "' should not have anything after ')'");
+        }
+        var desc = key.substring(31);
+        var value = (String) entry.getValue();
+        if ("true".equals(value)) {
+          descriptors.put(desc, true);
+        } else if ("false".equals(value)) {
+          descriptors.put(desc, false);
+        } else {
+          throw new IllegalArgumentException("Config key " + key + " supposed to be true or false, was " + value);
+        }
+      }
     }
+    return descriptors;
   }
 
-  DescriptorMatcher(String[] positiveMatches) {
-    this(new HashMap<>(positiveMatches.length));
+  private static Map<String, Boolean> fromPositiveMatches(String[] positiveMatches) {
+    var descriptors = new HashMap<String, Boolean>(positiveMatches.length);
     for (var positiveMatch : positiveMatches) {
       descriptors.put(positiveMatch, true);
     }
+    return descriptors;
   }
 
-  void addFromProperties(String category, Properties props) {
-    var prefix = "temporal.workflowcheck." + category + ".";
-    for (var entry : props.entrySet()) {
-      // Key is temporal.workflowcheck.<category>.<pattern>=<true|false>
-      var key = (String) entry.getKey();
-      if (!key.startsWith(prefix)) {
-        continue;
-      }
-      // Sanity check to confirm methods with descriptors need to _not_ have
-      // return values
-      var closeParenIndex = key.lastIndexOf(')');
-      if (closeParenIndex > 0 && closeParenIndex != key.length() - 1) {
-        throw new IllegalArgumentException("Config key '" + key + "' should not have anything after ')'");
-      }
-      var desc = key.substring(31);
-      var value = (String) entry.getValue();
-      if ("true".equals(value)) {
-        descriptors.put(desc, true);
-      } else if ("false".equals(value)) {
-        descriptors.put(desc, false);
-      } else {
-        throw new IllegalArgumentException("Config key " + key + " supposed to be true or false, was " + value);
-      }
+  // All descriptors and their values, not to be mutated
+  Map<String, Boolean> descriptors() {
+    return descriptors;
+  }
+
+  // Updates the digest with every descriptor and value in a deterministic
+  // order
+  void digest(MessageDigest digest) {
+    for (var entry : new TreeMap<>(descriptors).entrySet()) {
+      digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+      digest.update(entry.getValue() ? (byte) 1 : (byte) 0);
     }
   }
 
@@ -61,71 +111,154 @@ class DescriptorMatcher {
     // Check full descriptor sans return, then full sans params, then just
     // member, then just member sans params, then FQCN, and then each parent
     // package. We remove return values from the method descriptor since the
-    // map only allows arguments.
+    // map only allows arguments. Every candidate is a concatenation of a class
+    // name range, a member name, and a descriptor prefix, so we build its
+    // hash from the hashes of those parts instead of building the string.
+    var descEnd = 0;
+    var descHash = 0;
     if (methodDescriptor != null) {
-      methodDescriptor = methodDescriptor.substring(0, methodDescriptor.indexOf(')') + 1);
+      descEnd = methodDescriptor.indexOf(')') + 1;
+      descHash = hash(methodDescriptor, 0, descEnd);
     }
+    var descPow = pow31(descEnd);
+    var classEnd = className.length();
+    var slashIndex = className.lastIndexOf('/');
 
     // Member name + descriptor doesn't have to be present to check class
     if (memberName != null) {
+      var memberHash = memberName.hashCode();
+      // Hash of "." + memberName
+      var dotMemberHash = '.' * pow31(memberName.length()) + memberHash;
+      var dotMemberPow = pow31(memberName.length() + 1);
       // Try qualified class with method
-      var classAndMember = className + "." + memberName;
+      var classAndMemberHash = className.hashCode() * dotMemberPow + dotMemberHash;
+      var slot = -1;
       if (methodDescriptor != null) {
-        var invalid = descriptors.get(classAndMember + methodDescriptor);
-        if (invalid != null) {
-          return invalid;
-        }
+        slot = find(classAndMemberHash * descPow + descHash,
+                className, 0, classEnd, memberName, methodDescriptor, descEnd);
       }
-      var invalid = descriptors.get(classAndMember);
-      if (invalid != null) {
-        return invalid;
+      if (slot < 0) {
+        slot = find(classAndMemberHash, className, 0, classEnd, memberName, null, 0);
       }
       // Try unqualified class with member
-      var slashIndex = className.lastIndexOf('/');
-      if (slashIndex > 0) {
-        classAndMember = classAndMember.substring(slashIndex + 1);
+      if (slot < 0 && slashIndex > 0) {
+        classAndMemberHash = hash(className, slashIndex + 1, classEnd) * dotMemberPow + dotMemberHash;
         if (methodDescriptor != null) {
-          invalid = descriptors.get(classAndMember + methodDescriptor);
-          if (invalid != null) {
-            return invalid;
-          }
+          slot = find(classAndMemberHash * descPow + descHash,
+                  className, slashIndex + 1, classEnd, memberName, methodDescriptor, descEnd);
         }
-        invalid = descriptors.get(classAndMember);
-        if (invalid != null) {
-          return invalid;
+        if (slot < 0) {
+          slot = find(classAndMemberHash, className, slashIndex + 1, classEnd, memberName, null, 0);
         }
       }
       // Just member
-      if (methodDescriptor != null) {
-        invalid = descriptors.get(memberName + methodDescriptor);
-        if (invalid != null) {
-          return invalid;
-        }
+      if (slot < 0 && methodDescriptor != null) {
+        slot = find(memberHash * descPow + descHash, className, -1, -1, memberName, methodDescriptor, descEnd);
       }
-      invalid = descriptors.get(memberName);
-      if (invalid != null) {
-        return invalid;
+      if (slot < 0) {
+        slot = find(memberHash, className, -1, -1, memberName, null, 0);
+      }
+      if (slot >= 0) {
+        return values[slot];
       }
     }
     // Unqualified class name
-    var slashIndex = className.lastIndexOf('/');
     if (slashIndex > 0) {
-      var invalid = descriptors.get(className.substring(slashIndex + 1));
-      if (invalid != null) {
-        return invalid;
+      var slot = find(hash(className, slashIndex + 1, classEnd), className, slashIndex + 1, classEnd, null, null, 0);
+      if (slot >= 0) {
+        return values[slot];
       }
     }
     // All packages above class
     while (true) {
-      var invalid = descriptors.get(className);
-      if (invalid != null) {
-        return invalid;
+      var slot = find(classEnd == className.length() ? className.hashCode() : hash(className, 0, classEnd),
+              className, 0, classEnd, null, null, 0);
+      if (slot >= 0) {
+        return values[slot];
       }
-      var slash = className.lastIndexOf('/');
-      if (slash == -1) {
+      classEnd = className.lastIndexOf('/', classEnd - 1);
+      if (classEnd == -1) {
         return null;
       }
-      className = className.substring(0, slash);
     }
   }
+
+  // Find the slot for the key made from the class name range, then "." and
+  // the member name if present, then the descriptor prefix if present. A
+  // negative class start means no class or "." part. Returns -1 if not found.
+  private int find(
+          int hash,
+          String className,
+          int classStart,
+          int classEnd,
+          @Nullable String memberName,
+          @Nullable String methodDescriptor,
+          int descEnd) {
+    for (var slot = hash & mask; ; slot = (slot + 1) & mask) {
+      var key = keys[slot];
+      if (key == null) {
+        return -1;
+      }
+      if (hashes[slot] == hash &&
+              matches(key, className, classStart, classEnd, memberName, methodDescriptor, descEnd)) {
+        return slot;
+      }
+    }
+  }
+
+  private static boolean matches(
+          String key,
+          String className,
+          int classStart,
+          int classEnd,
+          @Nullable String memberName,
+          @Nullable String methodDescriptor,
+          int descEnd) {
+    var hasClass = classStart >= 0;
+    var classLength = hasClass ? classEnd - classStart : 0;
+    var length = classLength;
+    if (memberName != null) {
+      length += (hasClass ? 1 : 0) + memberName.length();
+    }
+    if (methodDescriptor != null) {
+      length += descEnd;
+    }
+    if (key.length() != length || (hasClass && !key.regionMatches(0, className, classStart, classLength))) {
+      return false;
+    }
+    var offset = classLength;
+    if (memberName != null) {
+      if (hasClass && key.charAt(offset++) != '.') {
+        return false;
+      }
+      if (!key.regionMatches(offset, memberName, 0, memberName.length())) {
+        return false;
+      }
+      offset += memberName.length();
+    }
+    return methodDescriptor == null || key.regionMatches(offset, methodDescriptor, 0, descEnd);
+  }
+
+  // Same as the hash code of the substring
+  private static int hash(String str, int start, int end) {
+    var hash = 0;
+    for (var i = start; i < end; i++) {
+      hash = 31 * hash + str.charAt(i);
+    }
+    return hash;
+  }
+
+  // 31 to the given power, overflowing like string hash codes do
+  private static int pow31(int exponent) {
+    var result = 1;
+    var base = 31;
+    while (exponent > 0) {
+      if ((exponent & 1) != 0) {
+        result *= base;
+      }
+      base *= base;
+      exponent >>= 1;
+    }
+    return result;
+  }
 }
@@ -0,0 +1,74 @@
+package io.temporal.workflowcheck;
+
+import jdk.jfr.*;
+
+/**
+ * JDK Flight Recorder events of a check. They are enabled by default in any
+ * recording, e.g. one started with the --jfr check option or with
+ * -XX:StartFlightRecording. When no recording is running, creating and
+ * committing them costs close to nothing, and their fields are only set if
+ * they will be committed.
+ */
+class Events {
+  private static final String CATEGORY = "Temporal Workflow Check";
+
+  @Name("io.temporal.workflowcheck.EnumerateEntry")
+  @Label("Enumerate Classpath Entry")
+  @Description("Opening a classpath entry and, if it is scanned, listing its classes")
+  @Category(CATEGORY)
+  static class EnumerateEntry extends Event {
+    @Label("Entry")
+    String entry;
+
+    @Label("Scanned")
+    boolean scanned;
+
+    @Label("Class Count")
+    int classCount;
+  }
+
+  @Name("io.temporal.workflowcheck.LoadClass")
+  @Label("Load Class")
+  @Description("Reading a class from the cache or JDK index, or parsing its headers from its bytes")
+  @Category(CATEGORY)
+  static class LoadClass extends Event {
+    @Label("Class Name")
+    String className;
+
+    @Label("Source")
+    @Description("Classpath entry, or where the class came from if not parsed from an entry")
+    String source;
+
+    @Label("Bytes")
+    @DataAmount
+    int bytes;
+  }
+
+  @Name("io.temporal.workflowcheck.ProcessMethodValidity")
+  @Label("Process Method Validity")
+  @Description("Resolving the calls of a method, and every unprocessed method they reach, to find invalid ones")
+  @Category(CATEGORY)
+  static class ProcessMethodValidity extends Event {
+    @Label("Class Name")
+    String className;
+
+    @Label("Method Name")
+    String methodName;
+
+    @Label("Method Descriptor")
+    String methodDescriptor;
+
+    @Label("Member Accesses")
+    @Description("Calls and field accesses of the method itself")
+    int memberAccesses;
+
+    @Label("Methods Visited")
+    @Description("Methods processed, including this one")
+    int methodsVisited;
+
+    @Label("Invalid")
+    boolean invalid;
+  }
+
+  private Events() { }
+}
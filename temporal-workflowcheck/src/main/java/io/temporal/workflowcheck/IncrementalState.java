@@ -0,0 +1,478 @@
+package io.temporal.workflowcheck;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * State of a previous check, persisted for incremental checks. This holds the
+ * content hash of every scanned class and every class used by another, which
+ * classes' analysis used which other classes (as a reverse index), and the
+ * resulting workflow classes. The
+ * next check only re-analyzes classes that changed or that transitively
+ * depend on one that changed, and reuses the results of every other workflow
+ * class.
+ */
+class IncrementalState {
+  private static final System.Logger logger = System.getLogger(IncrementalState.class.getName());
+
+  // Must be changed whenever the format or the analysis logic changes
+  private static final int VERSION = 1;
+  private static final int MAGIC = 0x57464953;
+
+  /**
+   * Hash of everything besides the classpath that the results depend on. State
+   * saved with a different key is not used.
+   */
+  static byte[] key(Config config, WorkflowCheck.Options options) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+    digest.update((byte) VERSION);
+    config.digest(digest);
+    // The standard library is not hashed class by class, so any JDK change
+    // invalidates the state
+    var jdk = System.getProperty("java.home") + "\n" + System.getProperty("java.runtime.version") + "\n" +
+            options.getJdkVersion() + "\n" + options.isJdkIndexEnabled();
+    digest.update(jdk.getBytes(StandardCharsets.UTF_8));
+    return digest.digest();
+  }
+
+  /**
+   * Content hash of every scanned class and of every class the previous
+   * state's classes used. Classes that are not on the classpath have no hash.
+   */
+  static Map<String, Long> hashClasses(ClassPath classPath, @Nullable IncrementalState previous) throws IOException {
+    var hashes = new HashMap<String, Long>(classPath.classes.size());
+    for (var className : classPath.classes) {
+      putHash(classPath, className, hashes);
+    }
+    // Classes only reached through the scanned classes are not listed, so the
+    // ones the previous state knew of are hashed to find changes in them
+    if (previous != null) {
+      for (var className : previous.classHashes.keySet()) {
+        if (!hashes.containsKey(className)) {
+          putHash(classPath, className, hashes);
+        }
+      }
+      for (var className : previous.dependents.keySet()) {
+        if (!hashes.containsKey(className)) {
+          putHash(classPath, className, hashes);
+        }
+      }
+    }
+    return hashes;
+  }
+
+  /**
+   * Content hash of every scanned class and of every class used by another,
+   * reusing the given hashes where present. This is what is saved for the
+   * next check.
+   */
+  static Map<String, Long> hashUsedClasses(
+          ClassPath classPath,
+          Map<String, Long> hashes,
+          Map<String, Set<String>> dependents) throws IOException {
+    var usedHashes = new HashMap<String, Long>(hashes.size());
+    var classNames = new HashSet<>(classPath.classes);
+    classNames.addAll(dependents.keySet());
+    for (var className : classNames) {
+      var hash = hashes.get(className);
+      if (hash != null) {
+        usedHashes.put(className, hash);
+      } else {
+        putHash(classPath, className, usedHashes);
+      }
+    }
+    return usedHashes;
+  }
+
+  private static void putHash(ClassPath classPath, String className, Map<String, Long> hashes) throws IOException {
+    var hash = classPath.contentHash(className);
+    if (hash != null) {
+      hashes.put(className, hash);
+    }
+  }
+
+  /**
+   * Load the state from the file, or return null if it does not exist, cannot
+   * be read, or was saved with a different key.
+   */
+  @Nullable
+  static IncrementalState load(Path file, byte[] key) {
+    if (!Files.exists(file)) {
+      return null;
+    }
+    try (var fileIn = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (fileIn.readInt() != MAGIC || fileIn.readInt() != VERSION) {
+        logger.log(System.Logger.Level.INFO, "Incremental state {0} has unrecognized header, running full check", file);
+        return null;
+      }
+      var fileKey = new byte[fileIn.readInt()];
+      fileIn.readFully(fileKey);
+      if (!Arrays.equals(key, fileKey)) {
+        logger.log(System.Logger.Level.INFO,
+                "Config or JDK changed since incremental state {0} was saved, running full check", file);
+        return null;
+      }
+      var in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(fileIn)));
+      var classHashes = new HashMap<String, Long>();
+      var count = in.readInt();
+      for (var i = 0; i < count; i++) {
+        classHashes.put(in.readUTF(), in.readLong());
+      }
+      var dependents = new HashMap<String, Set<String>>();
+      count = in.readInt();
+      for (var i = 0; i < count; i++) {
+        var className = in.readUTF();
+        var classDependents = new HashSet<String>();
+        var dependentCount = in.readInt();
+        for (var j = 0; j < dependentCount; j++) {
+          classDependents.add(in.readUTF());
+        }
+        dependents.put(className, classDependents);
+      }
+      return new IncrementalState(classHashes, dependents, readResults(in));
+    } catch (IOException | RuntimeException e) {
+      // A bad state file is not fatal, we just run a full check
+      logger.log(System.Logger.Level.WARNING, "Ignoring unreadable incremental state {0}: {1}", file, e);
+      return null;
+    }
+  }
+
+  /**
+   * Save the state to the file. The dependents are keyed by class name and are
+   * the names of the classes whose analysis used it.
+   */
+  static void save(
+          Path file,
+          byte[] key,
+          Map<String, Long> classHashes,
+          Map<String, Set<String>> dependents,
+          List<ClassInfo> workflowClasses) throws IOException {
+    var parent = file.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+    var temp = Files.createTempFile(parent, "state", ".tmp");
+    try {
+      try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(key.length);
+        out.write(key);
+        var body = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(out)));
+        // Sorted for deterministic output
+        var classNames = new TreeSet<>(classHashes.keySet());
+        body.writeInt(classNames.size());
+        for (var className : classNames) {
+          body.writeUTF(className);
+          body.writeLong(classHashes.get(className));
+        }
+        var dependentClassNames = new TreeSet<>(dependents.keySet());
+        body.writeInt(dependentClassNames.size());
+        for (var className : dependentClassNames) {
+          body.writeUTF(className);
+          var classDependents = new TreeSet<>(dependents.get(className));
+          body.writeInt(classDependents.size());
+          for (var dependent : classDependents) {
+            body.writeUTF(dependent);
+          }
+        }
+        writeResults(workflowClasses, body);
+        body.close();
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Reverse the dependencies tracked by the loader into dependents, keeping
+   * the previous state's dependents for every class that was not re-analyzed.
+   */
+  static Map<String, Set<String>> dependents(
+          @Nullable IncrementalState previous,
+          Set<String> reanalyzed,
+          Map<String, Set<String>> dependencies) {
+    var dependents = new HashMap<String, Set<String>>();
+    if (previous != null) {
+      for (var entry : previous.dependents.entrySet()) {
+        for (var dependent : entry.getValue()) {
+          if (!reanalyzed.contains(dependent)) {
+            dependents.computeIfAbsent(entry.getKey(), k -> new HashSet<>()).add(dependent);
+          }
+        }
+      }
+    }
+    for (var entry : dependencies.entrySet()) {
+      for (var dependency : entry.getValue()) {
+        dependents.computeIfAbsent(dependency, k -> new HashSet<>()).add(entry.getKey());
+      }
+    }
+    return dependents;
+  }
+
+  final Map<String, Long> classHashes;
+  // Names of the classes whose analysis used the class, keyed by class name
+  final Map<String, Set<String>> dependents;
+  final List<ClassInfo> workflowClasses;
+
+  private IncrementalState(
+          Map<String, Long> classHashes,
+          Map<String, Set<String>> dependents,
+          List<ClassInfo> workflowClasses) {
+    this.classHashes = classHashes;
+    this.dependents = dependents;
+    this.workflowClasses = workflowClasses;
+  }
+
+  /**
+   * Get the classes that changed (including added and removed classes) and
+   * every class whose analysis transitively used one of them.
+   */
+  Set<String> affectedClasses(Map<String, Long> newClassHashes) {
+    var affected = new HashSet<String>();
+    var pending = new ArrayDeque<String>();
+    for (var entry : newClassHashes.entrySet()) {
+      if (!entry.getValue().equals(classHashes.get(entry.getKey())) && affected.add(entry.getKey())) {
+        pending.add(entry.getKey());
+      }
+    }
+    for (var className : classHashes.keySet()) {
+      if (!newClassHashes.containsKey(className) && affected.add(className)) {
+        pending.add(className);
+      }
+    }
+    while (!pending.isEmpty()) {
+      var classDependents = dependents.get(pending.poll());
+      if (classDependents != null) {
+        for (var dependent : classDependents) {
+          if (affected.add(dependent)) {
+            pending.add(dependent);
+          }
+        }
+      }
+    }
+    return affected;
+  }
+
+  // Results are written as every class and method reachable from the
+  // workflow classes, each referring to others by index
+  private static void writeResults(List<ClassInfo> workflowClasses, DataOutputStream out) throws IOException {
+    var classes = new ArrayList<ClassInfo>();
+    var classIndexes = new IdentityHashMap<ClassInfo, Integer>();
+    var methods = new ArrayList<ClassInfo.MethodInfo>();
+    var methodIndexes = new IdentityHashMap<ClassInfo.MethodInfo, Integer>();
+    for (var info : workflowClasses) {
+      addIndex(info, classes, classIndexes);
+    }
+    // Walk both lists while they grow
+    var classIndex = 0;
+    var methodIndex = 0;
+    while (classIndex < classes.size() || methodIndex < methods.size()) {
+      if (classIndex < classes.size()) {
+        for (var overloads : classes.get(classIndex++).methods.values()) {
+          for (var method : overloads) {
+            addIndex(method, methods, methodIndexes);
+          }
+        }
+        continue;
+      }
+      var method = methods.get(methodIndex++);
+      if (method.workflowImpl != null) {
+        addIndex(method.workflowImpl.declClassInfo, classes, classIndexes);
+      }
+      if (method.invalidMemberAccesses != null) {
+        for (var access : method.invalidMemberAccesses) {
+          if (access.resolvedInvalidClass != null) {
+            addIndex(access.resolvedInvalidClass, classes, classIndexes);
+          }
+          if (access.resolvedInvalidMethod != null) {
+            addIndex(access.resolvedInvalidMethod, methods, methodIndexes);
+          }
+        }
+      }
+    }
+
+    out.writeInt(classes.size());
+    for (var info : classes) {
+      out.writeInt(info.access);
+      out.writeUTF(info.name);
+      writeNullableUTF(info.fileName, out);
+      writeNullableUTF(info.superClass, out);
+      out.writeInt(info.superInterfaces == null ? -1 : info.superInterfaces.length);
+      if (info.superInterfaces != null) {
+        for (var iface : info.superInterfaces) {
+          out.writeUTF(iface);
+        }
+      }
+      out.writeInt(info.methods.size());
+      for (var overloads : info.methods.entrySet()) {
+        out.writeUTF(overloads.getKey());
+        out.writeInt(overloads.getValue().size());
+        for (var method : overloads.getValue()) {
+          out.writeInt(methodIndexes.get(method));
+        }
+      }
+    }
+    out.writeInt(methods.size());
+    for (var method : methods) {
+      out.writeInt(method.access);
+      out.writeUTF(method.descriptor);
+      out.writeByte(method.configuredInvalid == null ? -1 : method.configuredInvalid ? 1 : 0);
+      out.writeByte(method.workflowDecl == null ? -1 : method.workflowDecl.kind.ordinal());
+      if (method.workflowImpl == null) {
+        out.writeInt(-1);
+      } else {
+        out.writeInt(classIndexes.get(method.workflowImpl.declClassInfo));
+        out.writeByte(method.workflowImpl.workflowDecl.kind.ordinal());
+      }
+      if (method.invalidMemberAccesses == null) {
+        out.writeInt(-1);
+        continue;
+      }
+      out.writeInt(method.invalidMemberAccesses.size());
+      for (var access : method.invalidMemberAccesses) {
+        writeNullableUTF(access.className, out);
+        writeNullableUTF(access.memberName, out);
+        writeNullableUTF(access.memberDescriptor, out);
+        out.writeInt(access.line == null ? -1 : access.line);
+        out.writeByte(access.operation.ordinal());
+        out.writeInt(access.resolvedInvalidClass == null ? -1 : classIndexes.get(access.resolvedInvalidClass));
+        out.writeInt(access.resolvedInvalidMethod == null ? -1 : methodIndexes.get(access.resolvedInvalidMethod));
+      }
+    }
+    out.writeInt(workflowClasses.size());
+    for (var info : workflowClasses) {
+      out.writeInt(classIndexes.get(info));
+    }
+  }
+
+  private static List<ClassInfo> readResults(DataInputStream in) throws IOException {
+    var classes = new ClassInfo[in.readInt()];
+    // Method indexes of each class by method name, set on the class after all
+    // methods are read
+    var classMethodIndexes = new ArrayList<Map<String, int[]>>(classes.length);
+    for (var i = 0; i < classes.length; i++) {
+      var info = new ClassInfo();
+      info.access = in.readInt();
+      info.name = in.readUTF();
+      info.fileName = readNullableUTF(in);
+      info.superClass = readNullableUTF(in);
+      var superInterfaceCount = in.readInt();
+      if (superInterfaceCount >= 0) {
+        info.superInterfaces = new String[superInterfaceCount];
+        for (var j = 0; j < superInterfaceCount; j++) {
+          info.superInterfaces[j] = in.readUTF();
+        }
+      }
+      var methodIndexes = new HashMap<String, int[]>();
+      var methodNameCount = in.readInt();
+      for (var j = 0; j < methodNameCount; j++) {
+        var methodName = in.readUTF();
+        var indexes = new int[in.readInt()];
+        for (var k = 0; k < indexes.length; k++) {
+          indexes[k] = in.readInt();
+        }
+        methodIndexes.put(methodName, indexes);
+      }
+      classes[i] = info;
+      classMethodIndexes.add(methodIndexes);
+    }
+
+    var methods = new ClassInfo.MethodInfo[in.readInt()];
+    // Resolved method indexes of each method's invalid accesses, set after all
+    // methods are read
+    var resolvedMethodIndexes = new int[methods.length][];
+    var declKinds = ClassInfo.MethodWorkflowDeclInfo.Kind.values();
+    for (var i = 0; i < methods.length; i++) {
+      var access = in.readInt();
+      var descriptor = in.readUTF();
+      var configuredInvalid = in.readByte();
+      var method = new ClassInfo.MethodInfo(access, descriptor, configuredInvalid == -1 ? null : configuredInvalid == 1);
+      var declKind = in.readByte();
+      if (declKind != -1) {
+        method.workflowDecl = new ClassInfo.MethodWorkflowDeclInfo(declKinds[declKind]);
+      }
+      var implDeclClassIndex = in.readInt();
+      if (implDeclClassIndex != -1) {
+        method.workflowImpl = new ClassInfo.MethodWorkflowImplInfo(classes[implDeclClassIndex],
+                new ClassInfo.MethodWorkflowDeclInfo(declKinds[in.readByte()]));
+      }
+      var accessCount = in.readInt();
+      if (accessCount >= 0) {
+        method.invalidMemberAccesses = new ArrayList<>(accessCount);
+        resolvedMethodIndexes[i] = new int[accessCount];
+        for (var j = 0; j < accessCount; j++) {
+          var className = readNullableUTF(in);
+          var memberName = readNullableUTF(in);
+          var memberDescriptor = readNullableUTF(in);
+          var line = in.readInt();
+          var memberAccess = new ClassInfo.MethodInvalidMemberAccessInfo(className, memberName, memberDescriptor,
+                  line == -1 ? null : line, ClassInfo.MethodInvalidMemberAccessInfo.Operation.VALUES[in.readByte()]);
+          var resolvedClassIndex = in.readInt();
+          memberAccess.resolvedInvalidClass = resolvedClassIndex == -1 ? null : classes[resolvedClassIndex];
+          resolvedMethodIndexes[i][j] = in.readInt();
+          method.invalidMemberAccesses.add(memberAccess);
+        }
+      }
+      methods[i] = method;
+    }
+
+    // Now that all are read, link methods
+    for (var i = 0; i < methods.length; i++) {
+      if (resolvedMethodIndexes[i] != null) {
+        for (var j = 0; j < resolvedMethodIndexes[i].length; j++) {
+          var index = resolvedMethodIndexes[i][j];
+          methods[i].invalidMemberAccesses.get(j).resolvedInvalidMethod = index == -1 ? null : methods[index];
+        }
+      }
+    }
+    for (var i = 0; i < classes.length; i++) {
+      for (var entry : classMethodIndexes.get(i).entrySet()) {
+        var overloads = new ArrayList<ClassInfo.MethodInfo>(entry.getValue().length);
+        for (var index : entry.getValue()) {
+          overloads.add(methods[index]);
+        }
+        classes[i].methods.put(entry.getKey(), overloads);
+      }
+    }
+
+    var workflowClasses = new ArrayList<ClassInfo>();
+    var count = in.readInt();
+    for (var i = 0; i < count; i++) {
+      workflowClasses.add(classes[in.readInt()]);
+    }
+    return workflowClasses;
+  }
+
+  private static <T> void addIndex(T item, List<T> items, Map<T, Integer> indexes) {
+    if (!indexes.containsKey(item)) {
+      indexes.put(item, items.size());
+      items.add(item);
+    }
+  }
+
+  private static void writeNullableUTF(@Nullable String str, DataOutputStream out) throws IOException {
+    out.writeBoolean(str != null);
+    if (str != null) {
+      out.writeUTF(str);
+    }
+  }
+
+  @Nullable
+  private static String readNullableUTF(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+}
@@ -0,0 +1,486 @@
+package io.temporal.workflowcheck;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Opcodes;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Precomputed index of standard library classes. This contains the class
+ * hierarchy, methods, non-final static fields, and invalidity results (with
+ * the invalid member accesses) of every standard library class for a certain
+ * JDK version. It is generated at build time using the default config and
+ * bundled as a resource so that standard library classes do not have to be
+ * parsed and analyzed every run.
+ * <p>
+ * Since invalidity depends on config, the index can only be used if the config
+ * differs from the default config solely in ways that cannot affect standard
+ * library classes. See {@link #isCompatible(Config)}.
+ */
+class JdkIndex {
+  private static final System.Logger logger = System.getLogger(JdkIndex.class.getName());
+
+  // Must be changed whenever the format or the analysis logic changes
+  private static final int VERSION = 1;
+  private static final int MAGIC = 0x57464a49;
+
+  private static final Map<Integer, Optional<JdkIndex>> loaded = new ConcurrentHashMap<>();
+
+  static String resourceName(int jdkVersion) {
+    return "jdk-index-" + jdkVersion + ".bin";
+  }
+
+  /**
+   * Load the bundled index for the given JDK feature version, or return null
+   * if there is not one. Indexes are only loaded once per class loader.
+   */
+  @Nullable
+  static JdkIndex load(int jdkVersion) {
+    return loaded.computeIfAbsent(jdkVersion, v -> {
+      try (var is = JdkIndex.class.getResourceAsStream(resourceName(jdkVersion))) {
+        if (is == null) {
+          logger.log(System.Logger.Level.DEBUG, "No JDK index for Java {0}", jdkVersion);
+          return Optional.empty();
+        }
+        return Optional.of(new JdkIndex(is));
+      } catch (IOException e) {
+        logger.log(System.Logger.Level.WARNING, "Unable to load JDK index for Java {0}: {1}", jdkVersion, e);
+        return Optional.empty();
+      }
+    }).orElse(null);
+  }
+
+  /**
+   * Generate an index of every standard library class of the currently running
+   * JDK, using the given config, and write it to the given file.
+   */
+  static void generate(Config config, Path file) throws IOException {
+    // Collect every standard library class in the modules of the boot layer
+    var classNames = new TreeSet<String>();
+    for (var module : ModuleLayer.boot().configuration().modules()) {
+      try (var reader = module.reference().open()) {
+        try (var resources = reader.list()) {
+          resources.forEach(resource -> {
+            if (resource.endsWith(".class") && !resource.endsWith("module-info.class")) {
+              var className = resource.substring(0, resource.length() - 6);
+              if (ClassPath.isStandardLibraryClass(className)) {
+                classNames.add(className);
+              }
+            }
+          });
+        }
+      }
+    }
+
+    // Load and process every method of every class. An empty class path means
+    // only the standard library is available. Also collect every method and
+    // field name since config keys can apply to member names alone.
+    var infos = new ArrayList<ClassInfo>(classNames.size());
+    var memberNames = new TreeSet<String>();
+    try (var classPath = new ClassPath()) {
+      var loader = new Loader(config, classPath, null, null);
+      for (var className : classNames) {
+        try (var is = classPath.classLoader.getResourceAsStream(className + ".class")) {
+          // Some classes, e.g. in packages not visible to class loaders, may
+          // not be loadable
+          if (is == null) {
+            continue;
+          }
+          new ClassReader(is).accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public FieldVisitor visitField(
+                    int access, String name, String descriptor, String signature, Object value) {
+              memberNames.add(name);
+              return null;
+            }
+          }, ClassReader.SKIP_CODE);
+        }
+        var info = loader.loadClass(className);
+        infos.add(info);
+        memberNames.addAll(info.methods.keySet());
+        for (var methods : info.methods.values()) {
+          for (var method : methods) {
+            loader.processMethodValidity(method);
+          }
+        }
+      }
+    }
+
+    // Build the string table from everything
+    var strings = new StringTable();
+    var configDescriptors = config.invalidMembers.descriptors();
+    for (var key : configDescriptors.keySet()) {
+      strings.add(key);
+    }
+    for (var memberName : memberNames) {
+      strings.add(memberName);
+    }
+    for (var info : infos) {
+      strings.add(info.name);
+      strings.add(info.fileName);
+      strings.add(info.superClass);
+      if (info.superInterfaces != null) {
+        for (var iface : info.superInterfaces) {
+          strings.add(iface);
+        }
+      }
+      if (info.nonFinalStaticFields != null) {
+        for (var field : info.nonFinalStaticFields) {
+          strings.add(field);
+        }
+      }
+      for (var methods : info.methods.entrySet()) {
+        strings.add(methods.getKey());
+        for (var method : methods.getValue()) {
+          strings.add(method.descriptor);
+          if (method.invalidMemberAccesses != null) {
+            for (var access : method.invalidMemberAccesses) {
+              strings.add(access.className);
+              strings.add(access.memberName);
+              strings.add(access.memberDescriptor);
+              if (access.resolvedInvalidClass != null) {
+                strings.add(access.resolvedInvalidClass.name);
+              }
+              if (access.resolvedInvalidMethod != null) {
+                strings.add(access.resolvedInvalidMethod.descriptor);
+              }
+            }
+          }
+        }
+      }
+    }
+
+    // Write header uncompressed and the rest compressed
+    Files.createDirectories(file.toAbsolutePath().getParent());
+    try (var fileOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+      fileOut.writeInt(MAGIC);
+      fileOut.writeInt(VERSION);
+      fileOut.writeInt(Runtime.version().feature());
+      var deflaterOut = new DeflaterOutputStream(fileOut);
+      var out = new DataOutputStream(deflaterOut);
+      strings.write(out);
+      writeVarInt(configDescriptors.size(), out);
+      for (var entry : new TreeMap<>(configDescriptors).entrySet()) {
+        writeVarInt(strings.index(entry.getKey()), out);
+        out.writeBoolean(entry.getValue());
+      }
+      writeStrings(memberNames, strings, out);
+      writeVarInt(infos.size(), out);
+      for (var info : infos) {
+        // Each class is prefixed with its name and its length so it can be
+        // found without decoding the others
+        var classBytes = new ByteArrayOutputStream();
+        writeClassInfo(info, strings, new DataOutputStream(classBytes));
+        writeVarInt(strings.index(info.name), out);
+        writeVarInt(classBytes.size(), out);
+        classBytes.writeTo(out);
+      }
+      out.flush();
+      deflaterOut.finish();
+    }
+  }
+
+  private static void writeClassInfo(ClassInfo info, StringTable strings, DataOutputStream out) throws IOException {
+    writeVarInt(info.access, out);
+    writeVarInt(strings.index(info.fileName), out);
+    writeVarInt(strings.index(info.superClass), out);
+    writeStrings(info.superInterfaces == null ? null : Arrays.asList(info.superInterfaces), strings, out);
+    // Sets and maps are written sorted so the same JDK always gives the same
+    // bytes
+    writeStrings(info.nonFinalStaticFields == null ? null : new TreeSet<>(info.nonFinalStaticFields), strings, out);
+    writeVarInt(info.methods.size(), out);
+    for (var methods : new TreeMap<>(info.methods).entrySet()) {
+      writeVarInt(strings.index(methods.getKey()), out);
+      writeVarInt(methods.getValue().size(), out);
+      for (var method : methods.getValue()) {
+        writeVarInt(method.access, out);
+        writeVarInt(strings.index(method.descriptor), out);
+        // Only the invalid accesses of non-configured methods are needed, the
+        // rest are considered valid
+        if (method.configuredInvalid != null || method.invalidMemberAccesses == null) {
+          writeVarInt(0, out);
+          continue;
+        }
+        writeVarInt(method.invalidMemberAccesses.size(), out);
+        for (var access : method.invalidMemberAccesses) {
+          writeVarInt(strings.index(access.className), out);
+          writeVarInt(strings.index(access.memberName), out);
+          writeVarInt(strings.index(access.memberDescriptor), out);
+          writeVarInt(access.line == null ? 0 : access.line + 1, out);
+          out.writeByte(access.operation.ordinal());
+          writeVarInt(access.resolvedInvalidClass == null ? 0 : strings.index(access.resolvedInvalidClass.name), out);
+          writeVarInt(access.resolvedInvalidMethod == null ? 0 :
+                  strings.index(access.resolvedInvalidMethod.descriptor), out);
+        }
+      }
+    }
+  }
+
+  private static void writeStrings(
+          @Nullable Collection<String> strs, StringTable strings, DataOutputStream out) throws IOException {
+    if (strs == null) {
+      writeVarInt(0, out);
+      return;
+    }
+    writeVarInt(strs.size() + 1, out);
+    // Sorted for deterministic output
+    for (var str : new TreeSet<>(strs)) {
+      writeVarInt(strings.index(str), out);
+    }
+  }
+
+  final int jdkVersion;
+  private final byte[] bytes;
+  // Strings are only decoded from the bytes when first needed since most are
+  // never used in a run. Index 0 is null.
+  private final int[] stringOffsets;
+  private final int[] stringLengths;
+  private final String[] strings;
+  private final Map<String, Integer> classOffsets = new HashMap<>();
+  private final Map<String, Boolean> configDescriptors = new HashMap<>();
+  private final int[] memberNameIndexes;
+  // Lazily created sets of names that config keys are checked against
+  @Nullable
+  private Set<String> memberNames;
+  @Nullable
+  private Set<String> simpleClassNames;
+  @Nullable
+  private Set<String> packageNames;
+
+  private JdkIndex(InputStream is) throws IOException {
+    var fileIn = new DataInputStream(new BufferedInputStream(is));
+    if (fileIn.readInt() != MAGIC || fileIn.readInt() != VERSION) {
+      throw new IOException("Unrecognized JDK index header");
+    }
+    jdkVersion = fileIn.readInt();
+    bytes = new InflaterInputStream(fileIn).readAllBytes();
+    var bytesIn = new ByteArrayInputStream(bytes);
+    var in = new DataInputStream(bytesIn);
+    var stringCount = readVarInt(in) + 1;
+    stringOffsets = new int[stringCount];
+    stringLengths = new int[stringCount];
+    strings = new String[stringCount];
+    for (var i = 1; i < stringCount; i++) {
+      stringLengths[i] = readVarInt(in);
+      stringOffsets[i] = bytes.length - bytesIn.available();
+      in.skipNBytes(stringLengths[i]);
+    }
+    var configCount = readVarInt(in);
+    for (var i = 0; i < configCount; i++) {
+      configDescriptors.put(string(readVarInt(in)), in.readBoolean());
+    }
+    memberNameIndexes = new int[readVarInt(in) - 1];
+    for (var i = 0; i < memberNameIndexes.length; i++) {
+      memberNameIndexes[i] = readVarInt(in);
+    }
+    var classCount = readVarInt(in);
+    for (var i = 0; i < classCount; i++) {
+      var className = string(readVarInt(in));
+      var length = readVarInt(in);
+      classOffsets.put(className, bytes.length - bytesIn.available());
+      in.skipNBytes(length);
+    }
+  }
+
+  /**
+   * Whether the index can be used with the given config. This is only true
+   * if every config descriptor that differs from the one the index was built
+   * with cannot match any class, method, or field in the index.
+   */
+  boolean isCompatible(Config config) {
+    var descriptors = config.invalidMembers.descriptors();
+    for (var entry : descriptors.entrySet()) {
+      if (!entry.getValue().equals(configDescriptors.get(entry.getKey())) && mayMatch(entry.getKey())) {
+        logger.log(System.Logger.Level.DEBUG, "JDK index not used, config key {0} may affect it", entry.getKey());
+        return false;
+      }
+    }
+    for (var key : configDescriptors.keySet()) {
+      if (!descriptors.containsKey(key) && mayMatch(key)) {
+        logger.log(System.Logger.Level.DEBUG, "JDK index not used, config key {0} missing", key);
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Whether the descriptor pattern could match anything in the index
+  private synchronized boolean mayMatch(String descriptor) {
+    if (memberNames == null) {
+      memberNames = new HashSet<>(memberNameIndexes.length);
+      for (var memberNameIndex : memberNameIndexes) {
+        memberNames.add(string(memberNameIndex));
+      }
+      simpleClassNames = new HashSet<>();
+      packageNames = new HashSet<>();
+      for (var className : classOffsets.keySet()) {
+        simpleClassNames.add(className.substring(className.lastIndexOf('/') + 1));
+        for (var slash = className.indexOf('/'); slash != -1; slash = className.indexOf('/', slash + 1)) {
+          packageNames.add(className.substring(0, slash));
+        }
+      }
+    }
+    // Remove method descriptor then check class and member parts
+    var parenIndex = descriptor.indexOf('(');
+    if (parenIndex >= 0) {
+      descriptor = descriptor.substring(0, parenIndex);
+    }
+    var dotIndex = descriptor.indexOf('.');
+    if (dotIndex >= 0) {
+      var className = descriptor.substring(0, dotIndex);
+      return className.indexOf('/') >= 0 ? classOffsets.containsKey(className) : simpleClassNames.contains(className);
+    }
+    // Without a dot, this can be a member name, unqualified class name,
+    // qualified class name, or package
+    return memberNames.contains(descriptor) ||
+            simpleClassNames.contains(descriptor) ||
+            classOffsets.containsKey(descriptor) ||
+            packageNames.contains(descriptor);
+  }
+
+  /**
+   * Read class info from the index, or return null if not present. The
+   * invalid member accesses of the methods are not resolved. Instead, for each
+   * method with invalid member accesses, the resolved class name and method
+   * descriptor (either can be null) of each access are put in the given links
+   * map to be resolved by the loader when needed.
+   */
+  @Nullable
+  ClassInfo readClass(String className, Config config, Map<ClassInfo.MethodInfo, String[]> methodLinks) {
+    var offset = classOffsets.get(className);
+    if (offset == null) {
+      return null;
+    }
+    try {
+      var in = new DataInputStream(new ByteArrayInputStream(bytes, offset, bytes.length - offset));
+      var info = new ClassInfo();
+      info.name = className;
+      info.access = readVarInt(in);
+      info.fileName = string(readVarInt(in));
+      info.superClass = string(readVarInt(in));
+      var superInterfaces = readStrings(in);
+      if (superInterfaces != null) {
+        info.superInterfaces = superInterfaces.toArray(new String[0]);
+      }
+      var nonFinalStaticFields = readStrings(in);
+      if (nonFinalStaticFields != null) {
+        info.nonFinalStaticFields = new HashSet<>(nonFinalStaticFields);
+      }
+      var methodNameCount = readVarInt(in);
+      for (var i = 0; i < methodNameCount; i++) {
+        var methodName = string(readVarInt(in));
+        var methodCount = readVarInt(in);
+        var methods = new ArrayList<ClassInfo.MethodInfo>(methodCount);
+        for (var j = 0; j < methodCount; j++) {
+          var access = readVarInt(in);
+          var descriptor = string(readVarInt(in));
+          var method = new ClassInfo.MethodInfo(
+                  access, descriptor, config.invalidMembers.check(className, methodName, descriptor));
+          var accessCount = readVarInt(in);
+          if (accessCount > 0) {
+            method.invalidMemberAccesses = new ArrayList<>(accessCount);
+            var links = new String[accessCount * 2];
+            for (var k = 0; k < accessCount; k++) {
+              var owner = string(readVarInt(in));
+              var memberName = string(readVarInt(in));
+              var memberDescriptor = string(readVarInt(in));
+              var line = readVarInt(in);
+              method.invalidMemberAccesses.add(new ClassInfo.MethodInvalidMemberAccessInfo(
+                      owner, memberName, memberDescriptor, line == 0 ? null : line - 1,
+                      ClassInfo.MethodInvalidMemberAccessInfo.Operation.values()[in.readByte()]));
+              links[k * 2] = string(readVarInt(in));
+              links[k * 2 + 1] = string(readVarInt(in));
+            }
+            methodLinks.put(method, links);
+          }
+          methods.add(method);
+        }
+        info.methods.put(methodName, methods);
+      }
+      return info;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Nullable
+  private String string(int index) {
+    // Races here just decode the same string twice
+    var str = strings[index];
+    if (str == null && index != 0) {
+      str = new String(bytes, stringOffsets[index], stringLengths[index], StandardCharsets.UTF_8);
+      strings[index] = str;
+    }
+    return str;
+  }
+
+  @Nullable
+  private List<String> readStrings(DataInputStream in) throws IOException {
+    var count = readVarInt(in) - 1;
+    if (count < 0) {
+      return null;
+    }
+    var strs = new ArrayList<String>(count);
+    for (var i = 0; i < count; i++) {
+      strs.add(string(readVarInt(in)));
+    }
+    return strs;
+  }
+
+  private static void writeVarInt(int v, DataOutputStream out) throws IOException {
+    while ((v & ~0x7F) != 0) {
+      out.writeByte((v & 0x7F) | 0x80);
+      v >>>= 7;
+    }
+    out.writeByte(v);
+  }
+
+  private static int readVarInt(DataInputStream in) throws IOException {
+    var v = 0;
+    for (var shift = 0; ; shift += 7) {
+      var b = in.readByte();
+      v |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return v;
+      }
+    }
+  }
+
+  // String table where index 0 is always null. Strings are indexed in sorted
+  // order, not the order they were added, so indexes are only available once
+  // it is written.
+  private static class StringTable {
+    private final TreeSet<String> strings = new TreeSet<>();
+    private final Map<String, Integer> indexes = new HashMap<>();
+
+    void add(@Nullable String str) {
+      if (str != null) {
+        strings.add(str);
+      }
+    }
+
+    int index(@Nullable String str) {
+      return str == null ? 0 : indexes.get(str);
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      writeVarInt(strings.size(), out);
+      for (var str : strings) {
+        indexes.put(str, indexes.size() + 1);
+        var bytes = str.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length, out);
+        out.write(bytes);
+      }
+    }
+  }
+}
@@ -5,145 +5,1084 @@ import org.objectweb.asm.Opcodes;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Loader that loads the classes, caches them, and does the work to determine
  * invalidity across classes (and clean up the classes).
  */
 class Loader {
+  // Constant pool tag of UTF-8 strings
+  private static final int CONSTANT_UTF8 = 1;
+  // Workflow declaration annotation descriptors as UTF-8 bytes, which are the
+  // same as the modified UTF-8 of the constant pool for these
+  private static final byte[][] workflowAnnotationDescriptors;
+
+  static {
+    var descriptors = ClassInfo.MethodWorkflowDeclInfo.Kind.annotationDescriptors.keySet();
+    workflowAnnotationDescriptors = new byte[descriptors.size()][];
+    var i = 0;
+    for (var descriptor : descriptors) {
+      workflowAnnotationDescriptors[i++] = descriptor.getBytes(StandardCharsets.UTF_8);
+    }
+  }
+
   private final Config config;
   private final ClassPath classPath;
-  private final Map<String, ClassInfo> classes = new HashMap<>();
+  @Nullable
+  private final ClassInfoCache cache;
+  // Expected to already be confirmed compatible with the config
+  @Nullable
+  private final JdkIndex jdkIndex;
+  // Concurrent because classes may be parsed on multiple threads
+  private final Map<String, ClassInfo> classes = new ConcurrentHashMap<>();
+  // Buffer each thread reads class bytes into
+  private final ThreadLocal<ClassPath.ClassBytes> classBytes = ThreadLocal.withInitial(ClassPath.ClassBytes::new);
+  // Resolved class names and method descriptors of the invalid member accesses
+  // of methods read from the JDK index that are not yet linked. Only accessed
+  // while locked on the JDK index.
+  private final Map<ClassInfo.MethodInfo, String[]> indexMethodLinks = new IdentityHashMap<>();
+  // Every name in loaded classes is interned here
+  private final SymbolTable symbols = new SymbolTable();
+  // Resolutions of static field owners and method calls, shared by every
+  // method that accesses the same member
+  private final Map<CallSiteKey, CallSite> callSites = new ConcurrentHashMap<>();
+  // Names of the classes each class's analysis used, keyed by class name. Only
+  // non-standard-library classes are tracked, and only when enabled.
+  @Nullable
+  private Map<String, Set<String>> dependencies;
+  // Whether the class or any of its non-standard-library supertypes may have
+  // workflow declarations, keyed by class name. Only used by the prefilter,
+  // which is sequential.
+  private final Map<String, Boolean> mayHaveWorkflowDecls = new HashMap<>();
+  // Only set when collecting stats, so every update is behind a null check
+  @Nullable
+  private CheckStats stats;
+  // Max loaded classes before evicting, 0 if unbounded
+  private int maxLoadedClasses;
+  // Loaded class count above which the next eviction happens
+  private int evictAbove;
+  // Incremented at each point classes may be evicted, and set on each class
+  // when loaded to find the least recently used
+  private int evictionStep;
+  // Processed methods of evicted classes, keyed by class name, which are put
+  // back on the class if it is loaded again
+  private final Map<String, EvictedClass> evictedClasses = new ConcurrentHashMap<>();
+  // Classes from cached classpath entries whose bodies are pending, so their
+  // cache records are written again with the bodies once visited
+  private final Map<ClassInfo, ClassPath.Entry> pendingBodyCacheEntries = new ConcurrentHashMap<>();
 
-  Loader(Config config, ClassPath classPath) {
+  Loader(Config config, ClassPath classPath, @Nullable ClassInfoCache cache, @Nullable JdkIndex jdkIndex) {
     this.config = config;
     this.classPath = classPath;
+    this.cache = cache;
+    this.jdkIndex = jdkIndex;
+  }
+
+  // Start tracking which classes the analysis of each class uses. Analysis is
+  // sequential, so this is not thread safe.
+  void trackDependencies() {
+    dependencies = new HashMap<>();
+  }
+
+  // Start updating the counters of the stats
+  void collectStats(CheckStats stats) {
+    this.stats = stats;
+  }
+
+  // Bound the number of loaded classes, evicting the least recently used when
+  // over the max at each call to evictClasses
+  void maxLoadedClasses(int maxLoadedClasses) {
+    this.maxLoadedClasses = maxLoadedClasses;
+    evictAbove = maxLoadedClasses;
+  }
+
+  // Class dependencies tracked since trackDependencies, or null if not
+  // tracking
+  @Nullable
+  Map<String, Set<String>> dependencies() {
+    return dependencies;
+  }
+
+  private void addDependency(String className, String dependencyClassName) {
+    if (dependencies != null && !className.equals(dependencyClassName) &&
+            !ClassPath.isStandardLibraryClass(className) &&
+            !ClassPath.isStandardLibraryClass(dependencyClassName)) {
+      dependencies.computeIfAbsent(className, k -> new HashSet<>()).add(dependencyClassName);
+    }
   }
 
   ClassInfo loadClass(String className) {
-    return classes.computeIfAbsent(className, v -> {
-      try (var is = classPath.classLoader.getResourceAsStream(className + ".class")) {
-        if (is == null) {
-          // We are going to just make a dummy when we can't find a class
-          // TODO(cretz): Warn?
-          var info = new ClassInfo();
-          info.access = Opcodes.ACC_SYNTHETIC;
-          info.name = className;
-          return info;
+    if (jdkIndex != null && ClassPath.isStandardLibraryClass(className)) {
+      var info = loadIndexedClass(className);
+      if (info != null) {
+        return info;
+      }
+    }
+    // We intentionally do not use computeIfAbsent here. That would hold a lock
+    // on the map bin for the entire parse. If two threads happen to parse the
+    // same class at once, the first one stored wins and the results are the
+    // same anyways.
+    var info = classes.get(className);
+    if (info == null) {
+      info = parseClass(className);
+      var evicted = evictedClasses.isEmpty() ? null : evictedClasses.get(className);
+      if (evicted != null) {
+        // The restored methods are processed, so the bodies visited later are
+        // not all of them
+        pendingBodyCacheEntries.remove(info);
+        evicted.restore(info, symbols);
+      }
+      var existing = classes.putIfAbsent(className, info);
+      if (existing != null) {
+        pendingBodyCacheEntries.remove(info);
+        info = existing;
+      } else if (evicted != null) {
+        evictedClasses.remove(className);
+        if (stats != null) {
+          stats.classesReloaded.increment();
+        }
+      }
+    }
+    info.lastUsed = evictionStep;
+    return info;
+  }
+
+  // Evicts the least recently used classes if more than the max are loaded.
+  // This must only be called between the analysis of classes. Standard
+  // library classes are never evicted when using the JDK index, since their
+  // methods are linked from it.
+  void evictClasses() {
+    evictionStep++;
+    if (maxLoadedClasses == 0 || classes.size() <= evictAbove) {
+      return;
+    }
+    var candidates = new ArrayList<ClassInfo>();
+    for (var info : classes.values()) {
+      if (jdkIndex == null || !ClassPath.isStandardLibraryClass(info.name)) {
+        candidates.add(info);
+      }
+    }
+    // Evict down to three quarters of the max so it is not done for every
+    // class once at the max
+    candidates.sort(Comparator.comparingInt(info -> info.lastUsed));
+    var evictCount = Math.min(candidates.size(), classes.size() - maxLoadedClasses * 3 / 4);
+    var evicted = Collections.<ClassInfo>newSetFromMap(new IdentityHashMap<>());
+    evicted.addAll(candidates.subList(0, evictCount));
+    evict(evicted);
+    // If the classes that cannot be evicted are near the max, this keeps from
+    // evicting again until a quarter of the max more are loaded
+    evictAbove = Math.max(maxLoadedClasses, classes.size() + maxLoadedClasses / 4);
+    if (stats != null) {
+      stats.classesEvicted += evictCount;
+    }
+  }
+
+  // Evicts the workflow class once its check is complete when the loaded
+  // classes are bounded, so it is not kept until the end of the check. When
+  // unbounded, every class stays loaded until the end anyway, so this does
+  // nothing instead of scanning every call site and hierarchy for each
+  // workflow class. This must only be called between the analysis of classes.
+  void evictWorkflowClass(ClassInfo info) {
+    if (maxLoadedClasses == 0) {
+      return;
+    }
+    var evicted = Collections.<ClassInfo>newSetFromMap(new IdentityHashMap<>());
+    evicted.add(info);
+    evict(evicted);
+    if (stats != null) {
+      stats.classesEvicted++;
+    }
+  }
+
+  // Removes the classes, keeping the processed methods of each so they are
+  // not processed again if the class is loaded again, and drops everything
+  // else referencing them during analysis (i.e. call sites and the
+  // hierarchies of other classes) to be rebuilt when needed. Each class may
+  // still be referenced by results, so like the trim after analysis, only
+  // what is important is kept on it.
+  private void evict(Set<ClassInfo> evicted) {
+    for (var info : evicted) {
+      classes.remove(info.name, info);
+      pendingBodyCacheEntries.remove(info);
+      var evictedClass = EvictedClass.of(info, symbols);
+      if (evictedClass != null) {
+        evictedClasses.put(info.name, evictedClass);
+      }
+      info.nonFinalStaticFields = null;
+      info.hierarchy = null;
+      info.methods.entrySet().removeIf(methods -> {
+        methods.getValue().removeIf(ClassInfo.MethodInfo::isUnimportant);
+        return methods.getValue().isEmpty();
+      });
+    }
+    callSites.values().removeIf(site -> evicted.contains(site.ownerClass) ||
+            evicted.contains(site.configuredOn) || evicted.contains(site.implClass));
+    for (var info : classes.values()) {
+      if (info.hierarchy != null) {
+        for (var ancestor : info.hierarchy.ancestors) {
+          if (evicted.contains(ancestor)) {
+            info.hierarchy = null;
+            break;
+          }
+        }
+      }
+    }
+  }
+
+  // Processed methods of an evicted class, sorted by method key
+  private static class EvictedClass {
+    private final long[] methodKeys;
+    private final ClassInfo.MethodInfo[] methods;
+
+    private EvictedClass(long[] methodKeys, ClassInfo.MethodInfo[] methods) {
+      this.methodKeys = methodKeys;
+      this.methods = methods;
+    }
+
+    // Null if the class has no processed methods
+    @Nullable
+    static EvictedClass of(ClassInfo info, SymbolTable symbols) {
+      var processed = new TreeMap<Long, ClassInfo.MethodInfo>();
+      for (var methodEntry : info.methods.entrySet()) {
+        var nameId = symbols.id(methodEntry.getKey());
+        for (var method : methodEntry.getValue()) {
+          if (method.memberAccesses == null && method.bodyClass == null) {
+            processed.put(ClassHierarchy.methodKey(nameId, method.descriptorId), method);
+          }
+        }
+      }
+      if (processed.isEmpty()) {
+        return null;
+      }
+      var methodKeys = new long[processed.size()];
+      var methods = new ClassInfo.MethodInfo[processed.size()];
+      var i = 0;
+      for (var entry : processed.entrySet()) {
+        methodKeys[i] = entry.getKey();
+        methods[i++] = entry.getValue();
+      }
+      return new EvictedClass(methodKeys, methods);
+    }
+
+    // Replace the methods of the newly loaded class with the processed ones,
+    // whose results are what processing them again would give since the
+    // class is the same when loaded again
+    void restore(ClassInfo info, SymbolTable symbols) {
+      for (var methodEntry : info.methods.entrySet()) {
+        var nameId = symbols.id(methodEntry.getKey());
+        var methods = methodEntry.getValue();
+        for (var i = 0; i < methods.size(); i++) {
+          var index = Arrays.binarySearch(methodKeys, ClassHierarchy.methodKey(nameId, methods.get(i).descriptorId));
+          if (index < 0) {
+            continue;
+          }
+          if (methods.get(i).bodyClass != null) {
+            info.pendingBodies--;
+          }
+          methods.set(i, this.methods[index]);
         }
-        var visitor = new ClassInfoVisitor(config);
-        new ClassReader(is).accept(visitor, ClassReader.SKIP_FRAMES);
-        return visitor.classInfo;
-      } catch (IOException e) {
-        throw new RuntimeException(e);
       }
-    });
+    }
   }
 
   @Nullable
-  ClassInfo.MethodWorkflowImplInfo findWorkflowImplInfo(
-          ClassInfo on, String implClassName, String implMethodName, String implMethodDescriptor) {
-    // Check my own methods
-    var methods = on.methods.get(implMethodName);
-    if (methods != null) {
-      for (var method : methods) {
-        if (method.workflowDecl != null && isMethodOverride(on, method, implClassName, implMethodDescriptor)) {
-          return new ClassInfo.MethodWorkflowImplInfo(on, method.workflowDecl);
+  private ClassInfo loadIndexedClass(String className) {
+    synchronized (jdkIndex) {
+      var info = classes.get(className);
+      if (info == null) {
+        var event = new Events.LoadClass();
+        event.begin();
+        info = jdkIndex.readClass(className, config, indexMethodLinks);
+        if (info != null) {
+          internSymbols(info);
+          classes.put(className, info);
+          if (stats != null) {
+            stats.classesFromJdkIndex.increment();
+          }
+          if (event.shouldCommit()) {
+            event.className = className;
+            event.source = "JDK index";
+            event.commit();
+          }
+        }
+      }
+      return info;
+    }
+  }
+
+  // Methods from the JDK index are already processed, but the classes and
+  // methods their invalid member accesses resolve to are only loaded once the
+  // method is needed. Linking every class eagerly would load most of the
+  // standard library. This links the method and, without recursion, every
+  // method along its invalid call chains.
+  private void linkIndexedMethod(ClassInfo.MethodInfo method) {
+    synchronized (jdkIndex) {
+      if (indexMethodLinks.isEmpty()) {
+        return;
+      }
+      var pending = new ArrayDeque<ClassInfo.MethodInfo>();
+      pending.add(method);
+      while (!pending.isEmpty()) {
+        var next = pending.poll();
+        // Methods not from the index (e.g. on internal JDK classes the index
+        // doesn't contain) are processed like normal
+        if (next.memberAccesses != null || next.bodyClass != null) {
+          processMethodValidity(next);
+          continue;
+        }
+        var links = indexMethodLinks.remove(next);
+        if (links == null) {
+          continue;
+        }
+        for (var i = 0; i < next.invalidMemberAccesses.size(); i++) {
+          var className = links[i * 2];
+          var methodDescriptor = links[i * 2 + 1];
+          if (className == null) {
+            continue;
+          }
+          var access = next.invalidMemberAccesses.get(i);
+          access.resolvedInvalidClass = loadClass(className);
+          var resolvedMethods = methodDescriptor == null ? null :
+                  access.resolvedInvalidClass.methods.get(access.memberName);
+          if (resolvedMethods == null) {
+            continue;
+          }
+          for (var resolvedMethod : resolvedMethods) {
+            if (resolvedMethod.descriptor.equals(methodDescriptor) &&
+                    (resolvedMethod.access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) == 0) {
+              access.resolvedInvalidMethod = resolvedMethod;
+              pending.add(resolvedMethod);
+              break;
+            }
+          }
         }
       }
     }
-    // Check super class then super interfaces (we don't care about the
-    // potential duplicate checks, better than maintaining an already-seen map)
-    if (on.superClass != null && !ClassPath.isStandardLibraryClass(on.superClass)) {
-      var info = findWorkflowImplInfo(loadClass(on.superClass), implClassName, implMethodName, implMethodDescriptor);
+  }
+
+  // Replaces every name in the class with the symbol table's instance and sets
+  // the symbol ids. Otherwise every class would hold its own copies of common
+  // names like java/lang/Object and (Ljava/lang/String;)V.
+  private void internSymbols(ClassInfo info) {
+    info.nameId = symbols.id(info.name);
+    info.name = symbols.symbol(info.nameId);
+    info.fileName = symbols.intern(info.fileName);
+    info.superClassId = symbols.id(info.superClass);
+    info.superClass = symbols.symbol(info.superClassId);
+    if (info.superInterfaces != null) {
+      info.superInterfaceIds = new int[info.superInterfaces.length];
+      for (var i = 0; i < info.superInterfaces.length; i++) {
+        info.superInterfaceIds[i] = symbols.id(info.superInterfaces[i]);
+        info.superInterfaces[i] = symbols.symbol(info.superInterfaceIds[i]);
+      }
+    }
+    if (info.nonFinalStaticFields != null) {
+      var fields = new HashSet<String>(info.nonFinalStaticFields.size() * 4 / 3 + 1);
+      for (var field : info.nonFinalStaticFields) {
+        fields.add(symbols.intern(field));
+      }
+      info.nonFinalStaticFields = fields;
+    }
+    var methods = new HashMap<String, List<ClassInfo.MethodInfo>>(info.methods.size() * 4 / 3 + 1);
+    for (var methodEntry : info.methods.entrySet()) {
+      for (var method : methodEntry.getValue()) {
+        method.descriptorId = symbols.id(method.descriptor);
+        method.descriptor = symbols.symbol(method.descriptorId);
+      }
+      methods.put(symbols.intern(methodEntry.getKey()), methodEntry.getValue());
+    }
+    info.methods = methods;
+  }
+
+  // Loads all of the given classes using a fork-join pool with the given
+  // parallelism
+  void loadClasses(List<String> classNames, int threads) {
+    var pool = new ForkJoinPool(threads);
+    try {
+      pool.invoke(new LoadClassesAction(classNames, 0, classNames.size()));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private ClassInfo parseClass(String className) {
+    var event = new Events.LoadClass();
+    event.begin();
+    var info = readClass(className, event);
+    internSymbols(info);
+    if (event.shouldCommit()) {
+      event.className = className;
+      if (event.source == null) {
+        var entry = classPath.entry(className);
+        event.source = entry == null ? "class loader" : entry.file.getPath();
+      }
+      event.commit();
+    }
+    return info;
+  }
+
+  // Only the bytes and, if not an entry, the source of the event are set here
+  private ClassInfo readClass(String className, Events.LoadClass event) {
+    // Only classes from classpath entries are cached
+    var entry = cache == null ? null : classPath.entry(className);
+    if (entry != null) {
+      var info = cache.read(entry, className, symbols);
       if (info != null) {
+        if (info.pendingBodies > 0) {
+          pendingBodyCacheEntries.put(info, entry);
+        }
+        if (stats != null) {
+          stats.classesFromCache.increment();
+        }
+        event.source = "cache";
         return info;
       }
     }
-    if (on.superInterfaces != null) {
-      for (var iface : on.superInterfaces) {
-        if (!ClassPath.isStandardLibraryClass(iface)) {
-          var info = findWorkflowImplInfo(loadClass(iface), implClassName, implMethodName, implMethodDescriptor);
-          if (info != null) {
+    var start = stats == null ? 0 : System.nanoTime();
+    try {
+      ClassReader reader;
+      int length;
+      // Read classpath entry classes directly into this thread's reusable
+      // buffer, and only use the class loader for others
+      var bytes = classBytes.get();
+      if (classPath.readClass(className, bytes)) {
+        reader = new ClassReader(bytes.bytes, 0, bytes.length);
+        length = bytes.length;
+      } else {
+        try (var is = classPath.classLoader.getResourceAsStream(className + ".class")) {
+          if (is == null) {
+            // We are going to just make a dummy when we can't find a class
+            // TODO(cretz): Warn?
+            var info = new ClassInfo();
+            info.access = Opcodes.ACC_SYNTHETIC;
+            info.name = className;
+            if (stats != null) {
+              stats.missingClasses.increment();
+            }
+            event.source = "missing";
             return info;
           }
+          var data = is.readAllBytes();
+          reader = new ClassReader(data);
+          length = data.length;
+        }
+      }
+      // Only headers are visited here, each method body is visited when the
+      // method is first processed
+      var visitor = new ClassInfoVisitor(config, symbols);
+      reader.accept(visitor, ClassReader.SKIP_CODE);
+      if (entry != null) {
+        cache.write(entry, visitor.classInfo, symbols);
+        if (visitor.classInfo.pendingBodies > 0) {
+          pendingBodyCacheEntries.put(visitor.classInfo, entry);
         }
       }
+      if (stats != null) {
+        stats.classesParsed.increment();
+        stats.bytesRead.add(length);
+        stats.parseNanos.add(System.nanoTime() - start);
+      }
+      event.bytes = length;
+      return visitor.classInfo;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
     }
-    return null;
   }
 
-  void processMethodValidity(ClassInfo.MethodInfo method, Set<ClassInfo.MethodInfo> processing) {
-    // If it has no member accesses (possibly actually has no calls/fields or
-    // just has configured-invalid already set) or already processed, do
-    // nothing. This of course means that recursion does not apply for
-    // invalidity.
-    if (method.memberAccesses == null || processing.contains(method)) {
+  // Visits the body of the method if not visited yet, along with every other
+  // pending body of its class so the class is only read once for them.
+  // Bodies are only visited during analysis, which is sequential, so this is
+  // not thread safe.
+  private void visitPendingBody(ClassInfo.MethodInfo method) {
+    var info = method.bodyClass;
+    if (info == null) {
       return;
     }
-    // Go over every call and check whether invalid
-    processing.add(method);
-    for (var memberAccess : method.memberAccesses) {
-      var invalid = false;
-      switch (memberAccess.operation) {
-        case FIELD_CONFIGURED_INVALID:
-          // This is always considered invalid
-          invalid = true;
-          break;
-        case FIELD_STATIC_GET:
-        case FIELD_STATIC_PUT:
-          // This is considered invalid if the class has the field as a
-          // non-final static
-          memberAccess.resolvedInvalidClass = loadClass(memberAccess.className);
-          invalid = memberAccess.resolvedInvalidClass.nonFinalStaticFields != null &&
-                  memberAccess.resolvedInvalidClass.nonFinalStaticFields.contains(memberAccess.memberName);
-          break;
-        case METHOD_CALL:
-          // A call is considered invalid/valid if:
-          // * Configured invalid set in the hierarchy (most-specific wins)
-          // * Actual impl of the method has invalid calls
-          var callClass = loadClass(memberAccess.className);
-
-          var configResolution = new ConfiguredInvalidResolution();
-          resolveConfiguredInvalid(callClass, memberAccess.memberName,
-                  memberAccess.memberDescriptor, 0, configResolution);
-          if (configResolution.value != null) {
-            if (configResolution.value) {
-              memberAccess.resolvedInvalidClass = configResolution.classFoundOn;
-              invalid = true;
-            }
-            break;
+    var start = stats == null ? 0 : System.nanoTime();
+    var pendingBodies = info.pendingBodies;
+    try {
+      ClassInfoVisitor.visitBodies(config, symbols, bodyReader(info.name), info);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    // Nothing is processed yet, so the record has every body
+    var entry = pendingBodyCacheEntries.remove(info);
+    if (entry != null) {
+      cache.write(entry, info, symbols);
+    }
+    if (stats != null) {
+      stats.methodBodiesParsed += pendingBodies;
+      stats.parseNanos.add(System.nanoTime() - start);
+    }
+  }
+
+  private ClassReader bodyReader(String className) throws IOException {
+    // The reader keeps the bytes, so they are copied out of the reusable
+    // buffer
+    var bytes = classBytes.get();
+    byte[] data;
+    if (classPath.readClass(className, bytes)) {
+      data = Arrays.copyOf(bytes.bytes, bytes.length);
+    } else {
+      try (var is = classPath.classLoader.getResourceAsStream(className + ".class")) {
+        if (is == null) {
+          throw new IOException("Class " + className + " no longer found to read method bodies from");
+        }
+        data = is.readAllBytes();
+      }
+    }
+    if (stats != null) {
+      stats.bytesRead.add(data.length);
+    }
+    return new ClassReader(data);
+  }
+
+  // Never serialized, it is only Serializable because every ForkJoinTask is
+  @SuppressWarnings("serial")
+  private class LoadClassesAction extends RecursiveAction {
+    // Number of classes below which we no longer split the work
+    private static final int BATCH_SIZE = 64;
+
+    private final List<String> classNames;
+    private final int start;
+    private final int end;
+
+    LoadClassesAction(List<String> classNames, int start, int end) {
+      this.classNames = classNames;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start <= BATCH_SIZE) {
+        for (var i = start; i < end; i++) {
+          loadClass(classNames.get(i));
+        }
+        return;
+      }
+      var mid = (start + end) >>> 1;
+      invokeAll(
+              new LoadClassesAction(classNames, start, mid),
+              new LoadClassesAction(classNames, mid, end));
+    }
+  }
+
+  @Nullable
+  ClassInfo.MethodWorkflowImplInfo findWorkflowImplInfo(
+          ClassInfo on, String implClassName, String implMethodName, String implMethodDescriptor) {
+    // Check my own methods, then those of non-standard-library ancestors
+    var ancestors = hierarchy(on).ancestors;
+    for (var i = 0; i < ancestors.length; i++) {
+      var ancestor = ancestors[i];
+      if (i > 0 && ClassPath.isStandardLibraryClass(ancestor.name)) {
+        continue;
+      }
+      var methods = ancestor.methods.get(implMethodName);
+      if (methods != null) {
+        for (var method : methods) {
+          if (method.workflowDecl != null &&
+                  isMethodOverride(ancestor, method, implClassName, symbols.id(implMethodDescriptor))) {
+            return new ClassInfo.MethodWorkflowImplInfo(ancestor, method.workflowDecl);
           }
+        }
+      }
+    }
+    return null;
+  }
 
-          var methodResolution = new MethodResolution();
-          resolveMethod(loadClass(memberAccess.className), memberAccess.className,
-                  memberAccess.memberName, memberAccess.memberDescriptor, methodResolution);
-          if (methodResolution.implClass != null) {
-            // Process invalidity on this method, then check if it's invalid
-            processMethodValidity(methodResolution.implMethod, processing);
-            if (methodResolution.implMethod.isInvalid()) {
-              memberAccess.resolvedInvalidClass = methodResolution.implClass;
-              memberAccess.resolvedInvalidMethod = methodResolution.implMethod;
-              invalid = true;
-            }
+  // Get the hierarchy of the class, building it and any missing ones of its
+  // supertypes. This uses an explicit stack instead of recursion since
+  // hierarchies can be deep.
+  ClassHierarchy hierarchy(ClassInfo info) {
+    if (info.hierarchy != null) {
+      return info.hierarchy;
+    }
+    var stack = new ArrayDeque<ClassInfo>();
+    var building = Collections.newSetFromMap(new IdentityHashMap<ClassInfo, Boolean>());
+    stack.push(info);
+    while (!stack.isEmpty()) {
+      var next = stack.peek();
+      if (next.hierarchy != null) {
+        stack.pop();
+        continue;
+      }
+      building.add(next);
+      // Load the supertypes, and if any are not built yet, build them first
+      var superClass = next.superClass == null ? null : loadClass(next.superClass);
+      if (superClass != null) {
+        addDependency(next.name, superClass.name);
+      }
+      ClassInfo[] superInterfaces = null;
+      var ready = pushIfNotBuilt(superClass, stack, building);
+      if (next.superInterfaces != null) {
+        superInterfaces = new ClassInfo[next.superInterfaces.length];
+        for (var i = 0; i < superInterfaces.length; i++) {
+          superInterfaces[i] = loadClass(next.superInterfaces[i]);
+          addDependency(next.name, superInterfaces[i].name);
+          ready &= pushIfNotBuilt(superInterfaces[i], stack, building);
+        }
+      }
+      if (ready) {
+        stack.pop();
+        next.hierarchy = new ClassHierarchy(next, superClass, superInterfaces);
+        if (stats != null) {
+          stats.hierarchiesBuilt++;
+        }
+      }
+    }
+    return info.hierarchy;
+  }
+
+  /**
+   * Whether the class may have a workflow implementation, reading only the
+   * supertypes and constant pools of the class and its supertypes instead of
+   * parsing them. A class can only have a workflow implementation if it or a
+   * non-standard-library supertype has a method annotated as a workflow
+   * declaration, and the constant pool of such a class always has the
+   * annotation descriptor. So if this is false, the class certainly has no
+   * workflow implementation. Classes that are already loaded are not read
+   * again. This is not thread safe.
+   */
+  boolean mayHaveWorkflowImpl(String className) {
+    // Like the hierarchy, this uses an explicit stack instead of recursion
+    var stack = new ArrayDeque<String>();
+    var visiting = new HashSet<String>();
+    stack.push(className);
+    while (!stack.isEmpty()) {
+      var next = stack.peek();
+      if (mayHaveWorkflowDecls.containsKey(next)) {
+        stack.pop();
+        continue;
+      }
+      visiting.add(next);
+      var superNames = new ArrayList<String>(2);
+      if (readHeader(next, superNames)) {
+        stack.pop();
+        mayHaveWorkflowDecls.put(next, true);
+        continue;
+      }
+      var ready = true;
+      var result = false;
+      for (var superName : superNames) {
+        if (ClassPath.isStandardLibraryClass(superName)) {
+          continue;
+        }
+        // Skipped classes still depend on their supertypes, since a change
+        // there can make them a workflow implementation
+        addDependency(next, superName);
+        var superResult = mayHaveWorkflowDecls.get(superName);
+        if (superResult != null) {
+          result |= superResult;
+        } else if (visiting.contains(superName)) {
+          // A class that is its own supertype fails when fully parsed
+          result = true;
+        } else {
+          stack.push(superName);
+          ready = false;
+        }
+      }
+      if (ready) {
+        stack.pop();
+        mayHaveWorkflowDecls.put(next, result);
+      }
+    }
+    return mayHaveWorkflowDecls.get(className);
+  }
+
+  // Adds the supertypes of the class to the list and returns whether the class
+  // may have workflow declarations, without parsing it if not loaded
+  private boolean readHeader(String className, List<String> superNames) {
+    var info = classes.get(className);
+    if (info != null) {
+      if (info.superClass != null) {
+        superNames.add(info.superClass);
+      }
+      if (info.superInterfaces != null) {
+        superNames.addAll(Arrays.asList(info.superInterfaces));
+      }
+      for (var methods : info.methods.values()) {
+        for (var method : methods) {
+          if (method.workflowDecl != null) {
+            return true;
           }
-          break;
+        }
+      }
+      return false;
+    }
+    try {
+      var bytes = classBytes.get();
+      byte[] data;
+      int length;
+      if (classPath.readClass(className, bytes)) {
+        data = bytes.bytes;
+        length = bytes.length;
+      } else {
+        try (var is = classPath.classLoader.getResourceAsStream(className + ".class")) {
+          // Classes that cannot be found are empty when loaded
+          if (is == null) {
+            return false;
+          }
+          data = is.readAllBytes();
+          length = data.length;
+        }
+      }
+      if (stats != null) {
+        stats.bytesRead.add(length);
+      }
+      var reader = new ClassReader(data, 0, length);
+      if (reader.getSuperName() != null) {
+        superNames.add(reader.getSuperName());
+      }
+      superNames.addAll(Arrays.asList(reader.getInterfaces()));
+      // Look for the annotation descriptors in the constant pool strings. Item
+      // offsets are just after the tag, and are 0 for the unused second slot
+      // of longs and doubles.
+      for (var i = 1; i < reader.getItemCount(); i++) {
+        var offset = reader.getItem(i);
+        if (offset == 0 || reader.readByte(offset - 1) != CONSTANT_UTF8) {
+          continue;
+        }
+        var utf8Length = reader.readUnsignedShort(offset);
+        for (var descriptor : workflowAnnotationDescriptors) {
+          if (descriptor.length == utf8Length &&
+                  Arrays.equals(data, offset + 2, offset + 2 + utf8Length, descriptor, 0, utf8Length)) {
+            return true;
+          }
+        }
+      }
+      return false;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static boolean pushIfNotBuilt(
+          @Nullable ClassInfo info, Deque<ClassInfo> stack, Set<ClassInfo> building) {
+    if (info == null || info.hierarchy != null) {
+      return true;
+    }
+    if (building.contains(info)) {
+      throw new IllegalStateException("Class " + info.name + " is its own supertype");
+    }
+    stack.push(info);
+    return false;
+  }
+
+  void processMethodValidity(ClassInfo.MethodInfo method) {
+    processMethodValidity(null, method);
+  }
+
+  // The class is only needed for dependency tracking
+  void processMethodValidity(@Nullable ClassInfo classInfo, ClassInfo.MethodInfo method) {
+    var event = new Events.ProcessMethodValidity();
+    event.begin();
+    // The class with the body is only known before visiting it
+    var declaringClass = classInfo == null ? method.bodyClass : classInfo;
+    visitPendingBody(method);
+    // Methods from the JDK index are already processed but may need linking
+    if (jdkIndex != null && method.memberAccesses == null) {
+      linkIndexedMethod(method);
+    }
+    // If it has no member accesses (possibly actually has no calls/fields or
+    // just has configured-invalid already set), it is already processed
+    if (method.memberAccesses == null) {
+      return;
+    }
+    // This is an iterative form of Tarjan's strongly connected components
+    // algorithm over calls to methods that are not processed yet. Each
+    // component (i.e. group of mutually recursive methods) is settled at once
+    // after every method it calls outside of itself, so every method is
+    // visited once and recursion does not depend on visit order. Visits stay
+    // in the map after they are settled, but since settled methods have no
+    // member accesses, any visit found for an unsettled method is on the
+    // component stack.
+    var memberAccessCount = method.memberAccesses.size;
+    var visits = new IdentityHashMap<ClassInfo.MethodInfo, MethodVisit>();
+    var path = new ArrayDeque<MethodVisit>();
+    var componentStack = new ArrayList<MethodVisit>();
+    var toLink = new ArrayList<ClassInfo.MethodInfo>();
+    var rootVisit = new MethodVisit(classInfo, method, 0);
+    visits.put(method, rootVisit);
+    path.push(rootVisit);
+    componentStack.add(rootVisit);
+    while (!path.isEmpty()) {
+      var visit = path.peek();
+      var accesses = visit.method.memberAccesses;
+      // Resolve the next call and visit the impl if not processed
+      if (visit.nextAccess < accesses.size) {
+        var i = visit.nextAccess++;
+        var operation = accesses.operation(i);
+        if (visit.classInfo != null &&
+                operation != ClassInfo.MethodInvalidMemberAccessInfo.Operation.FIELD_CONFIGURED_INVALID) {
+          addDependency(visit.classInfo.name, symbols.symbol(accesses.classNameId(i)));
+        }
+        if (operation != ClassInfo.MethodInvalidMemberAccessInfo.Operation.METHOD_CALL) {
+          continue;
+        }
+        var callSite = resolveCallSite(accesses, i, true);
+        visit.callSites[i] = callSite;
+        if (callSite.configuredInvalid != null || callSite.implMethod == null) {
+          continue;
+        }
+        visitPendingBody(callSite.implMethod);
+        if (callSite.implMethod.memberAccesses == null) {
+          continue;
+        }
+        var calleeVisit = visits.get(callSite.implMethod);
+        if (calleeVisit == null) {
+          calleeVisit = new MethodVisit(callSite.implClass, callSite.implMethod, visits.size());
+          visits.put(callSite.implMethod, calleeVisit);
+          path.push(calleeVisit);
+          componentStack.add(calleeVisit);
+        } else {
+          visit.lowLink = Math.min(visit.lowLink, calleeVisit.index);
+        }
+        continue;
+      }
+      // All calls visited, so if this is the root of a component, settle it
+      path.pop();
+      if (!path.isEmpty()) {
+        path.peek().lowLink = Math.min(path.peek().lowLink, visit.lowLink);
+      }
+      if (visit.lowLink == visit.index) {
+        var start = componentStack.size() - 1;
+        while (componentStack.get(start) != visit) {
+          start--;
+        }
+        var component = componentStack.subList(start, componentStack.size());
+        settleComponent(component, toLink);
+        component.clear();
+      }
+    }
+    // Link the standard library methods the new invalid accesses resolved to
+    for (var linkMethod : toLink) {
+      linkIndexedMethod(linkMethod);
+    }
+    if (stats != null) {
+      stats.methodsVisited += visits.size();
+    }
+    if (event.shouldCommit()) {
+      if (declaringClass != null) {
+        event.className = declaringClass.name;
+        event.methodName = methodName(declaringClass, method);
+      }
+      event.methodDescriptor = method.descriptor;
+      event.memberAccesses = memberAccessCount;
+      event.methodsVisited = visits.size();
+      event.invalid = method.isInvalid();
+      event.commit();
+    }
+  }
+
+  // Name of the method on the class, only used for events since methods do
+  // not keep their names
+  @Nullable
+  private static String methodName(ClassInfo classInfo, ClassInfo.MethodInfo method) {
+    for (var methods : classInfo.methods.entrySet()) {
+      for (var other : methods.getValue()) {
+        if (other == method) {
+          return methods.getKey();
+        }
+      }
+    }
+    return null;
+  }
+
+  // A method being visited by processMethodValidity
+  private static class MethodVisit {
+    // Only set when the class is known, for dependency tracking
+    @Nullable
+    private final ClassInfo classInfo;
+    private final ClassInfo.MethodInfo method;
+    private final int index;
+    private int lowLink;
+    private int nextAccess;
+    // Resolved call sites by access index, null for non-calls
+    private final CallSite[] callSites;
+
+    private MethodVisit(@Nullable ClassInfo classInfo, ClassInfo.MethodInfo method, int index) {
+      this.classInfo = classInfo;
+      this.method = method;
+      this.index = index;
+      lowLink = index;
+      callSites = new CallSite[method.memberAccesses.size];
+    }
+  }
+
+  private void settleComponent(List<MethodVisit> component, List<ClassInfo.MethodInfo> toLink) {
+    Set<ClassInfo.MethodInfo> methods = Collections.newSetFromMap(new IdentityHashMap<>(component.size()));
+    for (var visit : component) {
+      methods.add(visit.method);
+    }
+    // Calls between methods of the component cannot make it invalid on their
+    // own. But if any method has an invalid access outside of it, every
+    // method is invalid since they all call each other.
+    var componentInvalid = false;
+    for (var i = 0; i < component.size() && !componentInvalid; i++) {
+      var visit = component.get(i);
+      for (var j = 0; j < visit.callSites.length && !componentInvalid; j++) {
+        componentInvalid = isAccessInvalid(visit, j, methods, false);
       }
-      if (invalid) {
+    }
+    for (var visit : component) {
+      var method = visit.method;
+      var accesses = method.memberAccesses;
+      for (var i = 0; i < accesses.size; i++) {
+        if (!isAccessInvalid(visit, i, methods, componentInvalid)) {
+          continue;
+        }
+        // Only invalid accesses become full objects
         if (method.invalidMemberAccesses == null) {
           method.invalidMemberAccesses = new ArrayList<>(1);
         }
+        var operation = accesses.operation(i);
+        var memberAccess = new ClassInfo.MethodInvalidMemberAccessInfo(
+                symbols.symbol(accesses.classNameId(i)), symbols.symbol(accesses.memberNameId(i)),
+                symbols.symbol(accesses.memberDescriptorId(i)),
+                accesses.line(i) == -1 ? null : accesses.line(i), operation);
+        var callSite = visit.callSites[i];
+        if (operation == ClassInfo.MethodInvalidMemberAccessInfo.Operation.FIELD_STATIC_GET ||
+                operation == ClassInfo.MethodInvalidMemberAccessInfo.Operation.FIELD_STATIC_PUT) {
+          memberAccess.resolvedInvalidClass = resolveCallSite(accesses, i, false).ownerClass;
+        } else if (callSite != null && callSite.configuredInvalid != null) {
+          memberAccess.resolvedInvalidClass = callSite.configuredOn;
+        } else if (callSite != null) {
+          memberAccess.resolvedInvalidClass = callSite.implClass;
+          memberAccess.resolvedInvalidMethod = callSite.implMethod;
+          if (jdkIndex != null && !methods.contains(callSite.implMethod)) {
+            toLink.add(callSite.implMethod);
+          }
+        }
         method.invalidMemberAccesses.add(memberAccess);
       }
     }
-    // Unset the member accesses now that we've processed them
-    method.memberAccesses = null;
-    // Sort invalid accesses if there are any
-    if (method.invalidMemberAccesses != null) {
-      method.invalidMemberAccesses.sort(Comparator.comparingInt(m -> m.line == null ? -1 : m.line));
+    for (var visit : component) {
+      var method = visit.method;
+      // Unset the member accesses now that we've processed them
+      method.memberAccesses = null;
+      // Sort invalid accesses if there are any
+      if (method.invalidMemberAccesses != null) {
+        method.invalidMemberAccesses.sort(Comparator.comparingInt(m -> m.line == null ? -1 : m.line));
+      }
+    }
+  }
+
+  // Whether the access is invalid. Calls to other methods in the component
+  // are invalid if the component is, and calls to itself never are.
+  private boolean isAccessInvalid(
+          MethodVisit visit, int index, Set<ClassInfo.MethodInfo> component, boolean componentInvalid) {
+    var accesses = visit.method.memberAccesses;
+    switch (accesses.operation(index)) {
+      case FIELD_CONFIGURED_INVALID:
+        // This is always considered invalid
+        return true;
+      case FIELD_STATIC_GET:
+      case FIELD_STATIC_PUT:
+        // This is considered invalid if the class has the field as a
+        // non-final static
+        return resolveCallSite(accesses, index, false).nonFinalStaticField;
+      case METHOD_CALL:
+        // A call is considered invalid/valid if:
+        // * Configured invalid set in the hierarchy (most-specific wins)
+        // * Actual impl of the method has invalid calls
+        var callSite = visit.callSites[index];
+        if (callSite.configuredInvalid != null) {
+          return callSite.configuredInvalid;
+        } else if (callSite.implMethod == null || callSite.implMethod == visit.method) {
+          return false;
+        } else if (component.contains(callSite.implMethod)) {
+          return componentInvalid;
+        }
+        return callSite.implMethod.isInvalid();
+      default:
+        return false;
+    }
+  }
+
+  // Key of a static field access (without descriptor) or method call
+  private static class CallSiteKey {
+    private final int classNameId;
+    private final int memberNameId;
+    private final int memberDescriptorId;
+
+    private CallSiteKey(int classNameId, int memberNameId, int memberDescriptorId) {
+      this.classNameId = classNameId;
+      this.memberNameId = memberNameId;
+      this.memberDescriptorId = memberDescriptorId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof CallSiteKey)) {
+        return false;
+      }
+      var other = (CallSiteKey) o;
+      return classNameId == other.classNameId && memberNameId == other.memberNameId &&
+              memberDescriptorId == other.memberDescriptorId;
+    }
+
+    @Override
+    public int hashCode() {
+      return (classNameId * 31 + memberNameId) * 31 + memberDescriptorId;
+    }
+  }
+
+  // Resolution of a call site. This does not include whether the resolved
+  // method is invalid since that can depend on what is being processed at the
+  // time.
+  private static class CallSite {
+    private ClassInfo ownerClass;
+    // Only for static fields
+    private boolean nonFinalStaticField;
+    // Only for methods, configured invalid is null if not configured
+    @Nullable
+    private Boolean configuredInvalid;
+    private ClassInfo configuredOn;
+    private ClassInfo implClass;
+    private ClassInfo.MethodInfo implMethod;
+  }
+
+  private CallSite resolveCallSite(ClassInfo.MethodMemberAccesses accesses, int index, boolean method) {
+    // Field descriptors do not matter for static field lookups. Like
+    // loadClass, we do not use computeIfAbsent since resolution loads classes
+    // and two threads resolving the same site get the same results.
+    var key = new CallSiteKey(accesses.classNameId(index), accesses.memberNameId(index),
+            method ? accesses.memberDescriptorId(index) : 0);
+    var site = callSites.get(key);
+    if (site != null) {
+      return site;
     }
-    processing.remove(method);
+    site = new CallSite();
+    if (stats != null) {
+      stats.callSitesResolved++;
+    }
+    var className = symbols.symbol(key.classNameId);
+    var memberName = symbols.symbol(key.memberNameId);
+    site.ownerClass = loadClass(className);
+    if (!method) {
+      site.nonFinalStaticField = site.ownerClass.nonFinalStaticFields != null &&
+              site.ownerClass.nonFinalStaticFields.contains(memberName);
+    } else {
+      var configResolution = new ConfiguredInvalidResolution();
+      resolveConfiguredInvalid(site.ownerClass, memberName,
+              symbols.symbol(key.memberDescriptorId), configResolution);
+      site.configuredInvalid = configResolution.value;
+      site.configuredOn = configResolution.classFoundOn;
+      // Only resolve the impl if not configured
+      if (site.configuredInvalid == null) {
+        var impl = resolveMethod(site.ownerClass, memberName, key.memberNameId, key.memberDescriptorId);
+        site.implClass = impl.implClass;
+        site.implMethod = impl.implMethod;
+      }
+    }
+    var existing = callSites.putIfAbsent(key, site);
+    return existing != null ? existing : site;
   }
 
   private static class ConfiguredInvalidResolution {
@@ -156,52 +1095,40 @@ class Loader {
           ClassInfo on,
           String methodName,
           String methodDescriptor,
-          int depth,
           ConfiguredInvalidResolution resolution) {
-    // First check myself
-    var configuredInvalid = config.invalidMembers.check(on.name, methodName, methodDescriptor);
-    if (configuredInvalid != null && isMoreSpecific(resolution.classFoundOn, resolution.depthFoundOn, on, depth)) {
-      resolution.classFoundOn = on;
-      resolution.depthFoundOn = depth;
-      resolution.value = configuredInvalid;
-    }
-
-    // Now check super class and super interfaces. We don't care enough to
-    // prevent re-checking diamonds.
-    if (on.superClass != null) {
-      resolveConfiguredInvalid(
-              loadClass(on.superClass),
-              methodName,
-              methodDescriptor,
-              depth + 1,
-              resolution);
-    }
-    if (on.superInterfaces != null) {
-      for (var iface : on.superInterfaces) {
-        resolveConfiguredInvalid(
-                loadClass(iface),
-                methodName,
-                methodDescriptor,
-                depth + 1,
-                resolution);
+    // Check myself and every ancestor
+    var hierarchy = hierarchy(on);
+    for (var i = 0; i < hierarchy.ancestors.length; i++) {
+      var ancestor = hierarchy.ancestors[i];
+      var configuredInvalid = config.invalidMembers.check(ancestor.name, methodName, methodDescriptor);
+      if (configuredInvalid != null &&
+              isMoreSpecific(resolution.classFoundOn, resolution.depthFoundOn, ancestor, hierarchy.depths[i])) {
+        resolution.classFoundOn = ancestor;
+        resolution.depthFoundOn = hierarchy.depths[i];
+        resolution.value = configuredInvalid;
       }
     }
   }
 
-  private static class MethodResolution {
-    ClassInfo implClass;
-    ClassInfo.MethodInfo implMethod;
-  }
-
-  private void resolveMethod(
+  private ClassHierarchy.MethodImpl resolveMethod(
           ClassInfo on,
-          String callClassName,
-          String callMethodName,
-          String callMethodDescriptor,
-          MethodResolution resolution) {
-    // First, see if the method is even on this class
-    var methods = on.methods.get(callMethodName);
-    if (methods != null) {
+          String methodName,
+          int methodNameId,
+          int methodDescriptorId) {
+    var hierarchy = hierarchy(on);
+    var key = ClassHierarchy.methodKey(methodNameId, methodDescriptorId);
+    var impl = hierarchy.methodImpls.get(key);
+    if (impl != null) {
+      return impl;
+    }
+    ClassInfo implClass = null;
+    ClassInfo.MethodInfo implMethod = null;
+    for (var ancestor : hierarchy.ancestors) {
+      // First, see if the method is even on this class
+      var methods = ancestor.methods.get(methodName);
+      if (methods == null) {
+        continue;
+      }
       for (var method : methods) {
         // Only methods with bodies apply
         if ((method.access & Opcodes.ACC_ABSTRACT) != 0 || (method.access & Opcodes.ACC_NATIVE) != 0) {
@@ -209,41 +1136,28 @@ class Loader {
         }
         // To qualify, method descriptor must match if same call class name, or
         // method must be an override if different call class name
-        if ((callClassName.equals(on.name) && method.descriptor.equals(callMethodDescriptor)) ||
-                isMethodOverride(on, method, callClassName, callMethodDescriptor)) {
-          // If we have a body and impl hasn't been sent, this is the impl.
+        if ((ancestor == on && method.descriptorId == methodDescriptorId) ||
+                isMethodOverride(ancestor, method, on.name, methodDescriptorId)) {
+          // If we have a body and impl hasn't been set, this is the impl.
           // Otherwise, we have to check whether it's more specific. Depth does
           // not matter because Java compiler won't allow ambiguity here (i.e.
           // multiple unrelated interface defaults).
-          if (isMoreSpecific(resolution.implClass, 0, on, 0)) {
-            resolution.implClass = on;
-            resolution.implMethod = method;
-            // If this is not an interface, we're done trying to find others
-            if ((method.access & Opcodes.ACC_INTERFACE) == 0) {
-              return;
-            }
+          if (isMoreSpecific(implClass, 0, ancestor, 0)) {
+            implClass = ancestor;
+            implMethod = method;
           }
           break;
         }
       }
-    }
-
-    // Now check super class and super interfaces. We don't care enough to
-    // prevent re-checking diamonds.
-    if (on.superClass != null) {
-      resolveMethod(
-              loadClass(on.superClass),
-              callClassName, callMethodName, callMethodDescriptor,
-              resolution);
-    }
-    if (on.superInterfaces != null) {
-      for (var iface : on.superInterfaces) {
-        resolveMethod(
-                loadClass(iface),
-                callClassName, callMethodName, callMethodDescriptor,
-                resolution);
+      // Classes come before interfaces and nothing is more specific than a
+      // class impl, so we're done once we have one
+      if (implClass != null && (implClass.access & Opcodes.ACC_INTERFACE) == 0) {
+        break;
       }
     }
+    impl = new ClassHierarchy.MethodImpl(implClass, implMethod);
+    hierarchy.methodImpls.put(key, impl);
+    return impl;
   }
 
   private boolean isMoreSpecific(
@@ -271,9 +1185,9 @@ class Loader {
     // default purposes, so there can be multiple. In this rare case, we will
     // choose which has the least depth, and in the rarer case they are the
     // same depth, we just leave previous.
-    if (isAssignableFrom(prevClass.name, newClass)) {
+    if (isAssignableFrom(prevClass.nameId, newClass)) {
       return true;
-    } else if (!isAssignableFrom(newClass.name, prevClass)) {
+    } else if (!isAssignableFrom(newClass.nameId, prevClass)) {
       return false;
     }
     return newDepth < prevDepth;
@@ -285,7 +1199,7 @@ class Loader {
           ClassInfo.MethodInfo superMethod,
           // If null, package-private not verified
           @Nullable String subClassName,
-          String subMethodDescriptor) {
+          int subMethodDescriptorId) {
     // Final, static, or private are never inherited
     var superAccess = superMethod.access;
     if ((superAccess & Opcodes.ACC_FINAL) != 0 ||
@@ -304,11 +1218,12 @@ class Loader {
     }
     // Check descriptor. This can have a covariant return, so this must check
     // exact args first then return covariance.
-    var superDesc = superMethod.descriptor;
     // Simple equality perf shortcut
-    if (superDesc.equals(subMethodDescriptor)) {
+    if (superMethod.descriptorId == subMethodDescriptorId) {
       return true;
     }
+    var superDesc = superMethod.descriptor;
+    var subMethodDescriptor = symbols.symbol(subMethodDescriptorId);
     // Since it didn't match exact, check up to end paren if both have ")L"
     var endParen = superDesc.lastIndexOf(')');
     if (endParen >= subMethodDescriptor.length() ||
@@ -322,46 +1237,21 @@ class Loader {
       return false;
     }
     // Check super return is same or super of sub return (after 'L', before end ';')
+    var subReturnClassName = subMethodDescriptor.substring(endParen + 2, subMethodDescriptor.length() - 1);
+    addDependency(superClass.name, subReturnClassName);
     return isAssignableFrom(
-            superMethod.descriptor.substring(endParen + 2, superMethod.descriptor.length() - 1),
-            subMethodDescriptor.substring(endParen + 2, subMethodDescriptor.length() - 1));
+            symbols.id(superDesc.substring(endParen + 2, superDesc.length() - 1)),
+            symbols.id(subReturnClassName));
   }
 
-  private boolean isAssignableFrom(String sameOrSuperOfSubject, String subject) {
-    if (sameOrSuperOfSubject.equals(subject)) {
+  private boolean isAssignableFrom(int sameOrSuperOfSubjectId, int subjectId) {
+    if (sameOrSuperOfSubjectId == subjectId) {
       return true;
     }
-    return isAssignableFrom(sameOrSuperOfSubject, loadClass(subject));
+    return isAssignableFrom(sameOrSuperOfSubjectId, loadClass(symbols.symbol(subjectId)));
   }
 
-  private boolean isAssignableFrom(String sameOrSuperOfSubject, ClassInfo subject) {
-    if (sameOrSuperOfSubject.equals(subject.name)) {
-      return true;
-    }
-    if (sameOrSuperOfSubject.equals(subject.superClass)) {
-      return true;
-    }
-    if (subject.superInterfaces != null) {
-      for (var iface : subject.superInterfaces) {
-        if (sameOrSuperOfSubject.equals(iface)) {
-          return true;
-        }
-      }
-    }
-    // Since there were no direct matches, now check if subject super classes
-    // or interfaces match
-    if (subject.superClass != null) {
-      if (isAssignableFrom(sameOrSuperOfSubject, loadClass(subject.superClass))) {
-        return true;
-      }
-    }
-    if (subject.superInterfaces != null) {
-      for (var iface : subject.superInterfaces) {
-        if (isAssignableFrom(sameOrSuperOfSubject, loadClass(iface))) {
-          return true;
-        }
-      }
-    }
-    return false;
+  private boolean isAssignableFrom(int sameOrSuperOfSubjectId, ClassInfo subject) {
+    return sameOrSuperOfSubjectId == subject.nameId || hierarchy(subject).isAssignableTo(sameOrSuperOfSubjectId);
   }
 }
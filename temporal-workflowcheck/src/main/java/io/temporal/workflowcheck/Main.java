@@ -1,8 +1,24 @@
 package io.temporal.workflowcheck;
 
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /** Entrypoint for CLI. */
 public class Main {
@@ -16,104 +32,542 @@ public class Main {
             
             Commands:
               check - Check all workflow code on the classpath for invalid calls
-              prebuild-config - Pre-build a config for certain packages to keep from scanning each time (TODO)
+              prebuild-config - Pre-build a config for certain packages to keep from scanning each time
+              daemon - Run a long-lived process to run checks sent with check --daemon
             """);
       return;
     }
     switch (args[0]) {
       case "check":
-        System.exit(check(Arrays.copyOfRange(args, 1, args.length)));
+        System.exit(check(Arrays.copyOfRange(args, 1, args.length), System.out, System.err, null));
       case "prebuild-config":
         System.exit(prebuildConfig(Arrays.copyOfRange(args, 1, args.length)));
+      case "daemon":
+        System.exit(daemon(Arrays.copyOfRange(args, 1, args.length)));
+      case "build-jdk-index":
+        // Internal command used by the build, intentionally not in help
+        System.exit(buildJdkIndex(Arrays.copyOfRange(args, 1, args.length)));
       default:
         System.err.println("Unrecognized command '" + args[0] + "'");
         System.exit(1);
     }
   }
 
-  private static int check(String[] args) throws IOException {
+  /**
+   * Run the check command with the given arguments (i.e. what follows "check"
+   * on the command line), printing to the given streams instead of stdout and
+   * stderr. Returns the exit code.
+   */
+  public static int check(String[] args, PrintStream out, PrintStream err) throws IOException {
+    return check(args, out, err, null);
+  }
+
+  // Runs the check command printing to the given streams. The cache memory is
+  // only present when run by the daemon.
+  static int check(
+          String[] args,
+          PrintStream out,
+          PrintStream err,
+          @Nullable ClassInfoCache.Memory cacheMemory) throws IOException {
     if (args.length == 1 && "--help".equals(args[0])) {
-      System.err.println("""
+      err.println("""
             Analyze Temporal workflows for common mistakes.
             
             Usage:
-              workflowcheck check <classpath...> [--config <config-file>] [--no-default-config] [--show-valid]
+              workflowcheck check <classpath...> [--scan <classpath>] [--config <config-file>] [--no-default-config]
+                  [--show-valid] [--threads <count>] [--cache-dir <dir>] [--jdk-version <version>] [--no-jdk-index]
+                  [--incremental <state-file>] [--daemon <socket-file>] [--memory-cache-mb <mb>]
+                  [--stats <text|json>] [--jfr <file>] [--max-loaded-classes <count>]
+                  [--format <text|sarif>] [--output <file>]
+            """);
+      return 0;
+    }
+    // Args list that removes options as encountered
+    var argsList = new ArrayList<>(List.of(args));
+
+    // Send to the daemon if there is one, otherwise check in this process
+    String daemonSocketFile;
+    try {
+      daemonSocketFile = removeOptionValue(argsList, "--daemon");
+    } catch (IllegalArgumentException e) {
+      err.println(e.getMessage());
+      return 1;
+    }
+    if (daemonSocketFile != null && cacheMemory == null) {
+      var exitCode = Daemon.send(Paths.get(daemonSocketFile), Daemon.COMMAND_CHECK,
+              absoluteCheckArgs(argsList), out, err);
+      if (exitCode != null) {
+        return exitCode;
+      }
+      err.println("No daemon listening on " + daemonSocketFile + ", checking in this process");
+    }
+
+    // Whether we should also show valid
+    var showValid = argsList.remove("--show-valid");
+
+    // Load scan classpaths, config, and options, then confirm the rest are
+    // classpath args
+    var scanClassPaths = new ArrayList<String>();
+    Config config;
+    WorkflowCheck.Options options;
+    String statsFormat;
+    String jfrFile;
+    boolean sarif;
+    String outputFile;
+    try {
+      while (true) {
+        var scanClassPath = removeOptionValue(argsList, "--scan");
+        if (scanClassPath == null) {
+          break;
+        }
+        scanClassPaths.add(scanClassPath);
+      }
+      config = removeConfig(argsList);
+      var optionsBuilder = removeOptions(argsList);
+      var incrementalStateFile = removeOptionValue(argsList, "--incremental");
+      if (incrementalStateFile != null) {
+        optionsBuilder.setIncrementalStateFile(Paths.get(incrementalStateFile));
+      }
+      statsFormat = removeOptionValue(argsList, "--stats");
+      if (statsFormat != null) {
+        if (!"text".equals(statsFormat) && !"json".equals(statsFormat)) {
+          throw new IllegalArgumentException("Invalid --stats value: " + statsFormat);
+        }
+        optionsBuilder.setStatsEnabled(true);
+      }
+      jfrFile = removeOptionValue(argsList, "--jfr");
+      var format = removeOptionValue(argsList, "--format");
+      if (format != null && !"text".equals(format) && !"sarif".equals(format)) {
+        throw new IllegalArgumentException("Invalid --format value: " + format);
+      }
+      sarif = "sarif".equals(format);
+      outputFile = removeOptionValue(argsList, "--output");
+      options = optionsBuilder.build();
+      // Only the scanned classpaths are required when present
+      checkClassPathArgs(argsList, scanClassPaths.isEmpty(), err);
+    } catch (IllegalArgumentException e) {
+      err.println(e.getMessage());
+      return 1;
+    }
+
+    // Record the check with JDK Flight Recorder if requested
+    Recording recording = null;
+    if (jfrFile != null) {
+      try {
+        recording = new Recording(Configuration.getConfiguration("profile"));
+      } catch (ParseException e) {
+        throw new IOException(e);
+      }
+      recording.setDestination(Paths.get(jfrFile));
+      recording.start();
+    }
+    try {
+      // Results go to the output file if present
+      if (outputFile == null) {
+        return runCheck(argsList, scanClassPaths, config, options, cacheMemory, showValid, sarif, statsFormat,
+                out, err);
+      }
+      try (var fileOut = new PrintStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(outputFile))),
+              false, StandardCharsets.UTF_8)) {
+        var exitCode = runCheck(argsList, scanClassPaths, config, options, cacheMemory, showValid, sarif,
+                statsFormat, fileOut, err);
+        // The print stream does not throw on failed writes, so check for them
+        // here (this also flushes)
+        if (fileOut.checkError()) {
+          err.println("Failed writing results to " + outputFile);
+          return 1;
+        }
+        err.println("Wrote results to " + outputFile);
+        return exitCode;
+      }
+    } finally {
+      if (recording != null) {
+        // Stopping writes the recording to the destination
+        recording.stop();
+        recording.close();
+        err.println("Wrote JFR recording to " + jfrFile);
+      }
+    }
+  }
+
+  private static int runCheck(
+          List<String> classPaths,
+          List<String> scanClassPaths,
+          Config config,
+          WorkflowCheck.Options options,
+          @Nullable ClassInfoCache.Memory cacheMemory,
+          boolean showValid,
+          boolean sarif,
+          @Nullable String statsFormat,
+          PrintStream out,
+          PrintStream err) throws IOException {
+    err.println("Analyzing classpath for classes with workflow methods...");
+    var workflowCheck = new WorkflowCheck(config, options);
+    workflowCheck.cacheMemory = cacheMemory;
+
+    // Print workflow methods impls of each class as soon as it is checked, so
+    // the classes do not have to be kept. SARIF only has the invalid ones.
+    var classCount = new AtomicInteger();
+    var anyInvalidImpls = new AtomicBoolean();
+    var sarifWriter = sarif ? new SarifWriter(out) : null;
+    WorkflowCheck.Listener listener = info -> {
+      classCount.incrementAndGet();
+      for (var methods : info.methods.entrySet().stream().sorted(Map.Entry.comparingByKey()).toList()) {
+        for (var method : methods.getValue()) {
+          // Only impls
+          if (method.workflowImpl == null) {
+            continue;
+          }
+          if (sarifWriter != null) {
+            sarifWriter.writeMethod(info, methods.getKey(), method);
+          } else if (showValid || method.isInvalid()) {
+            out.println(Printer.methodText(info, methods.getKey(), method));
+          }
+          if (method.isInvalid()) {
+            anyInvalidImpls.set(true);
+          }
+        }
+      }
+    };
+    if (scanClassPaths.isEmpty()) {
+      workflowCheck.findWorkflowClasses(listener, classPaths);
+    } else {
+      workflowCheck.findWorkflowClasses(listener, scanClassPaths, classPaths.toArray(new String[0]));
+    }
+    // The summary would not be valid SARIF, so it goes to stderr instead
+    if (sarifWriter != null) {
+      sarifWriter.finish();
+      err.println("Found " + classCount.get() + " class(es) with workflow methods");
+    } else {
+      out.println("Found " + classCount.get() + " class(es) with workflow methods");
+    }
+
+    // Stats go to stderr so they do not mix with the results
+    var stats = workflowCheck.getLastStats();
+    if (stats != null) {
+      err.println("json".equals(statsFormat) ? stats.toJson() : stats.toText());
+    }
+    return anyInvalidImpls.get() ? 1 : 0;
+  }
+
+  private static int prebuildConfig(String[] args) throws IOException {
+    if (args.length == 1 && "--help".equals(args[0])) {
+      System.err.println("""
+            Pre-build a config of invalid members for certain packages.
+            
+            Usage:
+              workflowcheck prebuild-config <classpath...> --package <package> [--package <package>...]
+                  [--output <properties-file>] [--config <config-file>] [--no-default-config]
+                  [--threads <count>] [--cache-dir <dir>] [--jdk-version <version>] [--no-jdk-index]
+                  [--memory-cache-mb <mb>] [--max-loaded-classes <count>]
             """);
       return 0;
     }
     // Args list that removes options as encountered
     var argsList = new ArrayList<>(List.of(args));
 
-    // Load config
+    // Collect packages, output, config, and options, then confirm the rest are
+    // classpath args
+    var packages = new ArrayList<String>();
+    String output;
+    Config config;
+    WorkflowCheck.Options options;
+    try {
+      while (true) {
+        var pkg = removeOptionValue(argsList, "--package");
+        if (pkg == null) {
+          break;
+        }
+        packages.add(pkg);
+      }
+      if (packages.isEmpty()) {
+        throw new IllegalArgumentException("At least one --package argument required");
+      }
+      output = removeOptionValue(argsList, "--output");
+      config = removeConfig(argsList);
+      options = removeOptions(argsList).build();
+      checkClassPathArgs(argsList, true, System.err);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      return 1;
+    }
+
+    System.err.println("Analyzing methods in packages " + String.join(", ", packages) + "...");
+    var invalidMembers = new WorkflowCheck(config, options).
+            prebuildInvalidMembers(packages, argsList.toArray(new String[0]));
+    var bld = new StringBuilder();
+    bld.append("# Generated by workflowcheck prebuild-config for packages: ").
+            append(String.join(", ", packages)).append('\n');
+    for (var entry : invalidMembers.entrySet()) {
+      bld.append(escapePropertyKey("temporal.workflowcheck.invalid." + entry.getKey())).
+              append('=').append(entry.getValue()).append('\n');
+    }
+    if (output == null) {
+      System.out.print(bld);
+    } else {
+      Files.writeString(Paths.get(output), bld);
+      System.err.println("Wrote " + invalidMembers.size() + " invalid member setting(s) to " + output);
+    }
+    return 0;
+  }
+
+  private static int daemon(String[] args) throws IOException {
+    if (args.length == 1 && "--help".equals(args[0])) {
+      System.err.println("""
+            Run a long-lived process that runs checks sent with check --daemon, keeping parsed classes in memory.
+            
+            Usage:
+              workflowcheck daemon --socket <socket-file> [--idle-timeout <minutes>] [--max-cache-mb <mb>] [--stop]
+            """);
+      return 0;
+    }
+    // Args list that removes options as encountered
+    var argsList = new ArrayList<>(List.of(args));
+
+    Path socketFile;
+    var idleTimeout = Duration.ofHours(3);
+    var maxCacheMb = 512L;
+    boolean stop;
+    try {
+      var socket = removeOptionValue(argsList, "--socket");
+      if (socket == null) {
+        throw new IllegalArgumentException("--socket argument required");
+      }
+      socketFile = Paths.get(socket);
+      var idleTimeoutMinutes = removeOptionValue(argsList, "--idle-timeout");
+      if (idleTimeoutMinutes != null) {
+        try {
+          idleTimeout = Duration.ofMinutes(Long.parseLong(idleTimeoutMinutes));
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("Invalid --idle-timeout value: " + idleTimeoutMinutes);
+        }
+        if (idleTimeout.isNegative() || idleTimeout.isZero()) {
+          throw new IllegalArgumentException("Invalid --idle-timeout value: " + idleTimeoutMinutes);
+        }
+      }
+      var maxCache = removeOptionValue(argsList, "--max-cache-mb");
+      if (maxCache != null) {
+        try {
+          maxCacheMb = Long.parseLong(maxCache);
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("Invalid --max-cache-mb value: " + maxCache);
+        }
+        if (maxCacheMb < 0) {
+          throw new IllegalArgumentException("Invalid --max-cache-mb value: " + maxCache);
+        }
+      }
+      stop = argsList.remove("--stop");
+      if (!argsList.isEmpty()) {
+        throw new IllegalArgumentException("Unrecognized argument: " + argsList.get(0));
+      }
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      return 1;
+    }
+
+    if (stop) {
+      var exitCode = Daemon.send(socketFile, Daemon.COMMAND_STOP, new String[0], System.out, System.err);
+      if (exitCode == null) {
+        System.err.println("No daemon listening on " + socketFile);
+        return 1;
+      }
+      System.err.println("Stopped daemon listening on " + socketFile);
+      return exitCode;
+    }
+    new Daemon(socketFile, idleTimeout, maxCacheMb * 1024 * 1024).run();
+    return 0;
+  }
+
+  private static int buildJdkIndex(String[] args) throws IOException {
+    if (args.length != 1) {
+      System.err.println("Usage: workflowcheck build-jdk-index <output-file>");
+      return 1;
+    }
+    // Analysis of the entire standard library recurses very deep, so this is
+    // run on a thread with a large stack
+    var error = new AtomicReference<Throwable>();
+    var thread = new Thread(null, () -> {
+      try {
+        JdkIndex.generate(Config.fromProperties(Config.defaultProperties()), Paths.get(args[0]));
+      } catch (Throwable e) {
+        error.set(e);
+      }
+    }, "build-jdk-index", 1L << 30);
+    thread.start();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+    if (error.get() != null) {
+      System.err.println("Failed building JDK index: " + error.get());
+      error.get().printStackTrace();
+      return 1;
+    }
+    System.err.println("Wrote JDK " + Runtime.version().feature() + " index to " + args[0]);
+    return 0;
+  }
+
+  // Removes the config options from the args and loads the config
+  private static Config removeConfig(List<String> argsList) throws IOException {
     var configProps = new ArrayList<Properties>();
     if (!argsList.remove("--no-default-config")) {
       configProps.add(Config.defaultProperties());
     }
     while (true) {
-      var configIndex = argsList.indexOf("--config");
-      if (configIndex == -1) {
+      var configFile = removeOptionValue(argsList, "--config");
+      if (configFile == null) {
         break;
-      } else if (configIndex == argsList.size() - 1) {
-        System.err.println("Missing --config value");
-        return 1;
       }
-      argsList.remove(configIndex);
       var props = new Properties();
-      try (var is = new FileInputStream(argsList.remove(configIndex))) {
+      try (var is = new FileInputStream(configFile)) {
         props.load(is);
       }
       configProps.add(props);
     }
+    return Config.fromProperties(configProps.toArray(new Properties[0]));
+  }
 
-    // Whether we should also show valid
-    var showValid = argsList.remove("--show-valid");
+  // Removes the workflow check options common to all commands from the args
+  // and returns the options builder
+  private static WorkflowCheck.Options.Builder removeOptions(List<String> argsList) {
+    var options = WorkflowCheck.Options.newBuilder();
+    var threads = removeOptionValue(argsList, "--threads");
+    if (threads != null) {
+      try {
+        options.setThreads(Integer.parseInt(threads));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Invalid --threads value: " + threads);
+      }
+    }
+    var cacheDir = removeOptionValue(argsList, "--cache-dir");
+    if (cacheDir != null) {
+      options.setCacheDirectory(Paths.get(cacheDir));
+    }
+    var jdkVersion = removeOptionValue(argsList, "--jdk-version");
+    if (jdkVersion != null) {
+      try {
+        options.setJdkVersion(Integer.parseInt(jdkVersion));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid --jdk-version value: " + jdkVersion);
+      }
+    }
+    if (argsList.remove("--no-jdk-index")) {
+      options.setJdkIndexEnabled(false);
+    }
+    var memoryCacheMb = removeOptionValue(argsList, "--memory-cache-mb");
+    if (memoryCacheMb != null) {
+      try {
+        options.setMemoryCacheSize(Long.parseLong(memoryCacheMb) * 1024 * 1024);
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Invalid --memory-cache-mb value: " + memoryCacheMb);
+      }
+    }
+    var maxLoadedClasses = removeOptionValue(argsList, "--max-loaded-classes");
+    if (maxLoadedClasses != null) {
+      try {
+        options.setMaxLoadedClasses(Integer.parseInt(maxLoadedClasses));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Invalid --max-loaded-classes value: " + maxLoadedClasses);
+      }
+    }
+    return options;
+  }
 
-    // Ensure that we have at least one classpath arg
-    if (argsList.isEmpty()) {
-      System.err.println("At least one classpath argument required");
-      return 1;
+  private static void checkClassPathArgs(List<String> argsList, boolean required, PrintStream err) {
+    // Ensure that we have at least one classpath arg if required
+    if (required && argsList.isEmpty()) {
+      throw new IllegalArgumentException("At least one classpath argument required");
     }
     // While it can rarely be possible for the first file in a class path string
     // to start with a dash, we're going to assume it's an invalid argument and
     // users can qualify if needed.
     var invalidArg = argsList.stream().filter(s -> s.startsWith("-")).findFirst();
     if (invalidArg.isPresent()) {
-      System.err.println("Unrecognized argument: " + invalidArg);
+      err.println("Unrecognized argument: " + invalidArg.get());
     }
+  }
 
-    System.err.println("Analyzing classpath for classes with workflow methods...");
-    var config = Config.fromProperties(configProps.toArray(new Properties[0]));
-    var infos = new WorkflowCheck(config).findWorkflowClasses(argsList.toArray(new String[0]));
-    System.out.println("Found " + infos.size() + " class(es) with workflow methods");
-    if (infos.isEmpty()) {
-      return 0;
+  // Makes the paths in check args absolute since the daemon has a different
+  // working directory. Classpath files given with @ are read here.
+  private static String[] absoluteCheckArgs(List<String> argsList) throws IOException {
+    var args = new ArrayList<String>(argsList.size());
+    for (var i = 0; i < argsList.size(); i++) {
+      var arg = argsList.get(i);
+      // A missing option value is left for the daemon to report
+      var hasValue = i < argsList.size() - 1;
+      if (hasValue && "--scan".equals(arg)) {
+        args.add(arg);
+        args.add(absoluteClassPath(argsList.get(++i)));
+      } else if (hasValue && PATH_OPTIONS.contains(arg)) {
+        args.add(arg);
+        args.add(Paths.get(argsList.get(++i)).toAbsolutePath().toString());
+      } else if (hasValue && VALUE_OPTIONS.contains(arg)) {
+        args.add(arg);
+        args.add(argsList.get(++i));
+      } else if (arg.startsWith("-")) {
+        args.add(arg);
+      } else {
+        args.add(absoluteClassPath(arg));
+      }
+    }
+    return args.toArray(new String[0]);
+  }
+
+  private static String absoluteClassPath(String classPath) throws IOException {
+    if (classPath.startsWith("@")) {
+      classPath = Files.readString(Paths.get(classPath.substring(1))).trim();
     }
+    var entries = classPath.split(File.pathSeparator);
+    for (var i = 0; i < entries.length; i++) {
+      if (!entries[i].isEmpty()) {
+        entries[i] = new File(entries[i]).getAbsolutePath();
+      }
+    }
+    return String.join(File.pathSeparator, entries);
+  }
 
-    // Print workflow methods impls
-    var anyInvalidImpls = false;
-    for (var info : infos) {
-      for (var methods : info.methods.entrySet().stream().sorted(Map.Entry.comparingByKey()).toList()) {
-        for (var method : methods.getValue()) {
-          // Only impls
-          if (method.workflowImpl == null) {
-            continue;
-          }
-          if (showValid || method.isInvalid()) {
-            System.out.println(Printer.methodText(info, methods.getKey(), method));
-          }
-          if (method.isInvalid()) {
-            anyInvalidImpls = true;
+  // Removes the option and its value from the args and returns the value, or
+  // returns null if the option is not present
+  @Nullable
+  private static String removeOptionValue(List<String> argsList, String option) {
+    var index = argsList.indexOf(option);
+    if (index == -1) {
+      return null;
+    } else if (index == argsList.size() - 1) {
+      throw new IllegalArgumentException("Missing " + option + " value");
+    }
+    argsList.remove(index);
+    return argsList.remove(index);
+  }
+
+  // Escapes a key the same way Properties.store does
+  private static String escapePropertyKey(String key) {
+    var bld = new StringBuilder(key.length());
+    for (var i = 0; i < key.length(); i++) {
+      var c = key.charAt(i);
+      switch (c) {
+        case '\t' -> bld.append("\\t");
+        case '\f' -> bld.append("\\f");
+        case ' ', '=', ':', '#', '!', '\\' -> bld.append('\\').append(c);
+        default -> {
+          if (c < 0x20 || c > 0x7e) {
+            bld.append(String.format("\\u%04X", (int) c));
+          } else {
+            bld.append(c);
           }
         }
       }
     }
-    return anyInvalidImpls ? 1 : 0;
+    return bld.toString();
   }
 
-  private static int prebuildConfig(String[] args) {
-    System.err.println("TODO");
-    return 1;
-  }
+  // Check options whose values are paths and that have other values
+  private static final Set<String> PATH_OPTIONS = Set.of(
+          "--config", "--cache-dir", "--incremental", "--jfr", "--output");
+  private static final Set<String> VALUE_OPTIONS = Set.of(
+          "--threads", "--jdk-version", "--memory-cache-mb", "--stats", "--max-loaded-classes", "--format");
 
   private Main() { }
 }
@@ -15,6 +15,14 @@ class Printer {
     return printer.bld.toString();
   }
 
+  // Class name with '.' separators, then the member name and, for methods,
+  // the argument types
+  static String friendlyMember(String className, String memberName, @Nullable String methodDescriptor) {
+    var printer = new Printer();
+    printer.appendFriendlyMember(className, memberName, methodDescriptor);
+    return printer.bld.toString();
+  }
+
   private final StringBuilder bld = new StringBuilder();
 
   private void appendMethod(
@@ -96,8 +104,9 @@ class Printer {
         } else if (accessInfo.resolvedInvalidMethod == null) {
           bld.append(" which is configured as invalid\n");
         } else if (seenMethods.contains(accessInfo.resolvedInvalidMethod)) {
-          // Should not happen
-          bld.append(" (unexpected recursion)\n");
+          // Methods calling each other are settled as invalid together, so
+          // the call back into one already printed above ends the chain
+          bld.append(" (recursive, see above)\n");
         } else {
           bld.append(":\n");
           appendMethod(
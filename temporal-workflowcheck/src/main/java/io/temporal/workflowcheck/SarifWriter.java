@@ -0,0 +1,220 @@
+package io.temporal.workflowcheck;
+
+import javax.annotation.Nullable;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+
+/**
+ * Writer of results as SARIF 2.1.0, the format code scanning tools such as
+ * GitHub's read. Each invalid workflow method is written as soon as it is
+ * given, so memory does not grow with the number of results. Every invalid
+ * member access of the method is a result located at the access, with a code
+ * flow along the chain of invalid calls to what makes it invalid.
+ */
+class SarifWriter {
+  private static final String SCHEMA = "https://json.schemastore.org/sarif-2.1.0.json";
+  private static final String INFORMATION_URI =
+          "https://github.com/temporalio/sdk-java/tree/master/temporal-workflowcheck";
+  // Base of source file locations, the conventional id for the source root
+  private static final String SOURCE_ROOT = "SRCROOT";
+  // Like the text output, invalid call chains are only followed this deep
+  private static final int MAX_CHAIN_DEPTH = 30;
+
+  // Rules in the order they are written, so the ordinal is the rule index
+  private enum Rule {
+    CONFIGURED_INVALID_METHOD("configured-invalid-method", "Workflow method is configured as invalid"),
+    INVALID_METHOD_CALL("invalid-method-call", "Workflow method invokes an invalid method"),
+    STATIC_FIELD_GET("static-field-get", "Workflow method gets a non-final static field"),
+    STATIC_FIELD_PUT("static-field-put", "Workflow method sets a non-final static field"),
+    CONFIGURED_INVALID_FIELD("configured-invalid-field", "Workflow method references a field configured as invalid");
+
+    private final String id;
+    private final String description;
+
+    Rule(String id, String description) {
+      this.id = id;
+      this.description = description;
+    }
+
+    static Rule of(ClassInfo.MethodInvalidMemberAccessInfo.Operation operation) {
+      switch (operation) {
+        case FIELD_STATIC_GET:
+          return STATIC_FIELD_GET;
+        case FIELD_STATIC_PUT:
+          return STATIC_FIELD_PUT;
+        case FIELD_CONFIGURED_INVALID:
+          return CONFIGURED_INVALID_FIELD;
+        default:
+          return INVALID_METHOD_CALL;
+      }
+    }
+  }
+
+  private final PrintStream out;
+  private boolean anyResults;
+
+  // Writes everything before the results
+  SarifWriter(PrintStream out) {
+    this.out = out;
+    out.append("{\"version\":\"2.1.0\",\"$schema\":\"").append(SCHEMA).append("\",\"runs\":[{\n");
+    out.append("\"tool\":{\"driver\":{\"name\":\"temporal-workflowcheck\",\"informationUri\":\"")
+            .append(INFORMATION_URI).append("\",\"rules\":[");
+    for (var rule : Rule.values()) {
+      if (rule.ordinal() > 0) {
+        out.append(',');
+      }
+      out.append("\n{\"id\":\"").append(rule.id).append("\",\"shortDescription\":{\"text\":\"")
+              .append(rule.description).append("\"}}");
+    }
+    out.append("]}},\n\"results\":[");
+  }
+
+  // Writes the results of the workflow method if it is invalid
+  void writeMethod(ClassInfo classInfo, String methodName, ClassInfo.MethodInfo methodInfo) {
+    if (!methodInfo.isInvalid()) {
+      return;
+    }
+    var workflowMethod = "Workflow method " + Printer.friendlyMember(classInfo.name, methodName, methodInfo.descriptor);
+    if (methodInfo.workflowImpl != null) {
+      workflowMethod += " (declared on " + methodInfo.workflowImpl.declClassInfo.name.replace('/', '.') + ")";
+    }
+    if (methodInfo.configuredInvalid != null || methodInfo.invalidMemberAccesses == null) {
+      startResult(Rule.CONFIGURED_INVALID_METHOD, workflowMethod + " is configured as invalid");
+      out.append(",\"locations\":[");
+      writeLocation(classInfo, methodName, methodInfo.descriptor, null, null);
+      out.append("]}");
+      return;
+    }
+    for (var access : methodInfo.invalidMemberAccesses) {
+      startResult(Rule.of(access.operation), workflowMethod + " " + accessText(access, true, false));
+      out.append(",\"locations\":[");
+      writeLocation(classInfo, methodName, methodInfo.descriptor, access.line, null);
+      out.append("],\"codeFlows\":[{\"threadFlows\":[{\"locations\":[");
+      writeCodeFlow(classInfo, methodName, methodInfo, access);
+      out.append("]}]}]}");
+    }
+  }
+
+  // Writes everything after the results and flushes
+  void finish() {
+    out.append("\n]}]}\n");
+    out.flush();
+  }
+
+  private void startResult(Rule rule, String message) {
+    if (anyResults) {
+      out.append(',');
+    }
+    anyResults = true;
+    out.append("\n{\"ruleId\":\"").append(rule.id).append("\",\"ruleIndex\":").append(String.valueOf(rule.ordinal()))
+            .append(",\"level\":\"error\",\"message\":{\"text\":");
+    writeString(message);
+    out.append('}');
+  }
+
+  // Each step is an access, starting at the one in the workflow method and
+  // following the first invalid access of each invalid method it invokes,
+  // ending at a call back into a method already in the flow
+  private void writeCodeFlow(
+          ClassInfo classInfo,
+          String methodName,
+          ClassInfo.MethodInfo methodInfo,
+          ClassInfo.MethodInvalidMemberAccessInfo access) {
+    var seenMethods = Collections.newSetFromMap(new IdentityHashMap<ClassInfo.MethodInfo, Boolean>());
+    seenMethods.add(methodInfo);
+    while (true) {
+      if (seenMethods.size() > 1) {
+        out.append(',');
+      }
+      out.append("\n{\"location\":");
+      var resolvedMethod = access.resolvedInvalidMethod;
+      var last = access.operation != ClassInfo.MethodInvalidMemberAccessInfo.Operation.METHOD_CALL ||
+              access.resolvedInvalidClass == null || resolvedMethod == null ||
+              resolvedMethod.configuredInvalid != null || resolvedMethod.invalidMemberAccesses == null ||
+              seenMethods.size() >= MAX_CHAIN_DEPTH;
+      var recursive = !last && !seenMethods.add(resolvedMethod);
+      last |= recursive;
+      writeLocation(classInfo, methodName, methodInfo.descriptor, access.line, accessText(access, last, recursive));
+      out.append('}');
+      if (last) {
+        return;
+      }
+      classInfo = access.resolvedInvalidClass;
+      methodName = access.memberName;
+      methodInfo = resolvedMethod;
+      access = resolvedMethod.invalidMemberAccesses.get(0);
+    }
+  }
+
+  // What the access does, and if it is the last of a chain, why it is invalid
+  private static String accessText(
+          ClassInfo.MethodInvalidMemberAccessInfo access, boolean last, boolean recursive) {
+    switch (access.operation) {
+      case FIELD_CONFIGURED_INVALID:
+        return "references " + Printer.friendlyMember(access.className, access.memberName, null) +
+                " which is configured as invalid";
+      case FIELD_STATIC_GET:
+        return "gets " + Printer.friendlyMember(access.className, access.memberName, null) +
+                " which is a non-final static field";
+      case FIELD_STATIC_PUT:
+        return "sets " + Printer.friendlyMember(access.className, access.memberName, null) +
+                " which is a non-final static field";
+      default:
+        var text = "invokes " + Printer.friendlyMember(access.className, access.memberName, access.memberDescriptor);
+        if (access.resolvedInvalidClass == null) {
+          return text + " (resolution failed)";
+        } else if (access.resolvedInvalidMethod == null || access.resolvedInvalidMethod.configuredInvalid != null) {
+          return text + " which is configured as invalid";
+        } else if (recursive) {
+          return text + " (recursive, see above)";
+        }
+        return last ? text + " which is invalid" : text;
+    }
+  }
+
+  // The file is the source file in the package directory of the class,
+  // relative to the source root base
+  private void writeLocation(
+          ClassInfo classInfo,
+          String methodName,
+          String methodDescriptor,
+          @Nullable Integer line,
+          @Nullable String message) {
+    out.append('{');
+    if (classInfo.fileName != null) {
+      var packageEnd = classInfo.name.lastIndexOf('/');
+      out.append("\"physicalLocation\":{\"artifactLocation\":{\"uri\":");
+      writeString(classInfo.name.substring(0, packageEnd + 1) + classInfo.fileName);
+      out.append(",\"uriBaseId\":\"").append(SOURCE_ROOT).append("\"}");
+      if (line != null) {
+        out.append(",\"region\":{\"startLine\":").append(String.valueOf(line)).append('}');
+      }
+      out.append("},");
+    }
+    out.append("\"logicalLocations\":[{\"fullyQualifiedName\":");
+    writeString(Printer.friendlyMember(classInfo.name, methodName, methodDescriptor));
+    out.append(",\"kind\":\"function\"}]");
+    if (message != null) {
+      out.append(",\"message\":{\"text\":");
+      writeString(message);
+      out.append('}');
+    }
+    out.append('}');
+  }
+
+  private void writeString(String str) {
+    out.append('"');
+    for (var i = 0; i < str.length(); i++) {
+      var c = str.charAt(i);
+      if (c == '"' || c == '\\') {
+        out.append('\\').append(c);
+      } else if (c < 0x20) {
+        out.append(String.format("\\u%04x", (int) c));
+      } else {
+        out.append(c);
+      }
+    }
+    out.append('"');
+  }
+}
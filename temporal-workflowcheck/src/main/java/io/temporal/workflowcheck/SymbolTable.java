@@ -0,0 +1,57 @@
+package io.temporal.workflowcheck;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Table of interned class, member, and descriptor strings. Each symbol gets a
+ * compact int id so symbols can be compared by id and each string is held
+ * only once no matter how many classes refer to it. Id 0 is reserved for
+ * null. This is safe to use from multiple threads.
+ */
+class SymbolTable {
+  private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+  // Indexed by id. Only replaced (with a larger copy) while locked, and ids
+  // are only published to the map after their symbol is in this array.
+  private volatile String[] symbols = new String[4096];
+  private int size = 1;
+
+  /** Get the id for the symbol, adding it if not present. */
+  int id(@Nullable String symbol) {
+    if (symbol == null) {
+      return 0;
+    }
+    var id = ids.get(symbol);
+    if (id != null) {
+      return id;
+    }
+    synchronized (this) {
+      id = ids.get(symbol);
+      if (id != null) {
+        return id;
+      }
+      var symbols = this.symbols;
+      if (size == symbols.length) {
+        symbols = Arrays.copyOf(symbols, size * 2);
+      }
+      symbols[size] = symbol;
+      this.symbols = symbols;
+      ids.put(symbol, size);
+      return size++;
+    }
+  }
+
+  /** Get the symbol for the id. */
+  @Nullable
+  String symbol(int id) {
+    return symbols[id];
+  }
+
+  /** Get the table's instance of the symbol, adding it if not present. */
+  @Nullable
+  String intern(@Nullable String symbol) {
+    return symbol(id(symbol));
+  }
+}
@@ -2,15 +2,19 @@ package io.temporal.workflowcheck;
 
 import org.objectweb.asm.Opcodes;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Target;
+import java.nio.file.Path;
 import java.util.*;
 
 /**
  * Utilities to help validate workflow correctness.
  */
 public class WorkflowCheck {
+  private static final System.Logger logger = System.getLogger(WorkflowCheck.class.getName());
+
   /**
    * Suppress all invalid-workflow warnings until the matching call to
    * {@link #restoreWarnings()}. This must be accompanied by a closing
@@ -50,11 +54,284 @@ public class WorkflowCheck {
     String[] invalidMembers() default {};
   }
 
+  /** Options for running a workflow check. */
+  public static class Options {
+    /** Create a new builder for options. */
+    public static Builder newBuilder() {
+      return new Builder();
+    }
+
+    /** Get the default options. */
+    public static Options getDefaultInstance() {
+      return DEFAULT_INSTANCE;
+    }
+
+    private static final Options DEFAULT_INSTANCE = newBuilder().build();
+
+    private final int threads;
+    @Nullable
+    private final Path cacheDirectory;
+    private final int jdkVersion;
+    private final boolean jdkIndexEnabled;
+    @Nullable
+    private final Path incrementalStateFile;
+    private final long memoryCacheSize;
+    private final boolean statsEnabled;
+    private final int maxLoadedClasses;
+
+    private Options(Builder builder) {
+      this.threads = builder.threads;
+      this.cacheDirectory = builder.cacheDirectory;
+      this.jdkVersion = builder.jdkVersion;
+      this.jdkIndexEnabled = builder.jdkIndexEnabled;
+      this.incrementalStateFile = builder.incrementalStateFile;
+      this.memoryCacheSize = builder.memoryCacheSize;
+      this.statsEnabled = builder.statsEnabled;
+      this.maxLoadedClasses = builder.maxLoadedClasses;
+    }
+
+    /**
+     * Number of threads used to parse classes. When 1 (the default), all
+     * classes are parsed on the calling thread.
+     */
+    public int getThreads() {
+      return threads;
+    }
+
+    /**
+     * Directory parsed class information is cached in across runs, or null if
+     * there is no caching (the default).
+     */
+    @Nullable
+    public Path getCacheDirectory() {
+      return cacheDirectory;
+    }
+
+    /**
+     * Java feature version whose bundled standard library index is used.
+     * Defaults to the version of the running JVM.
+     */
+    public int getJdkVersion() {
+      return jdkVersion;
+    }
+
+    /**
+     * Whether the bundled standard library index is used when available and
+     * compatible with the config. Default is true.
+     */
+    public boolean isJdkIndexEnabled() {
+      return jdkIndexEnabled;
+    }
+
+    /**
+     * File the state of each check is saved to so the next check only
+     * re-analyzes what changed, or null if checks are not incremental (the
+     * default).
+     */
+    @Nullable
+    public Path getIncrementalStateFile() {
+      return incrementalStateFile;
+    }
+
+    /**
+     * Max bytes of parsed class information kept in memory for later checks
+     * in the same JVM. Default is 0, meaning none is kept.
+     */
+    public long getMemoryCacheSize() {
+      return memoryCacheSize;
+    }
+
+    /**
+     * Whether stats of each check are collected for
+     * {@link #getLastStats()}. Default is false.
+     */
+    public boolean isStatsEnabled() {
+      return statsEnabled;
+    }
+
+    /**
+     * Max number of classes kept loaded during a check. Default is 0, meaning
+     * there is no max.
+     */
+    public int getMaxLoadedClasses() {
+      return maxLoadedClasses;
+    }
+
+    /** Builder for {@link Options}. */
+    public static class Builder {
+      private int threads = 1;
+      @Nullable
+      private Path cacheDirectory;
+      private int jdkVersion = Runtime.version().feature();
+      private boolean jdkIndexEnabled = true;
+      @Nullable
+      private Path incrementalStateFile;
+      private long memoryCacheSize;
+      private boolean statsEnabled;
+      private int maxLoadedClasses;
+
+      private Builder() { }
+
+      /**
+       * Set the number of threads used to parse classes. When greater than 1,
+       * classes on the classpath are parsed in parallel before analysis. The
+       * results are the same regardless of thread count. Default is 1.
+       */
+      public Builder setThreads(int threads) {
+        if (threads < 1) {
+          throw new IllegalArgumentException("Threads must be at least 1");
+        }
+        this.threads = threads;
+        return this;
+      }
+
+      /**
+       * Set the directory to cache parsed class information in across runs.
+       * Each classpath entry is cached separately, keyed by the contents of
+       * the JAR (or the size and modification time of the class files in a
+       * directory) and by the config. Default is null, meaning no caching.
+       */
+      public Builder setCacheDirectory(@Nullable Path cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+        return this;
+      }
+
+      /**
+       * Set the Java feature version (e.g. 17 or 21) whose bundled standard
+       * library index is used. Indexes are only bundled for certain versions,
+       * and if there is not one for this version, standard library classes are
+       * parsed from the running JVM like normal. Default is the version of the
+       * running JVM.
+       */
+      public Builder setJdkVersion(int jdkVersion) {
+        this.jdkVersion = jdkVersion;
+        return this;
+      }
+
+      /**
+       * Set whether the bundled standard library index is used. The index
+       * contains the precomputed hierarchy and invalidity of standard library
+       * classes using the default config. It is only used if the config does
+       * not change anything that applies to standard library classes.
+       * Otherwise, or if this is false, standard library classes are parsed
+       * from the running JVM. Default is true.
+       */
+      public Builder setJdkIndexEnabled(boolean jdkIndexEnabled) {
+        this.jdkIndexEnabled = jdkIndexEnabled;
+        return this;
+      }
+
+      /**
+       * Set the file to save the state of each check to for incremental
+       * checks. When the file has the state of a previous check with the same
+       * config and JDK, only classes that changed since then or that
+       * transitively depend on classes that changed are analyzed, and the
+       * results for all other workflow classes are reused from the state. The
+       * results are the same as a full check. This only applies to
+       * {@link #findWorkflowClasses(String...)}. Default is null, meaning
+       * checks are not incremental.
+       */
+      public Builder setIncrementalStateFile(@Nullable Path incrementalStateFile) {
+        this.incrementalStateFile = incrementalStateFile;
+        return this;
+      }
+
+      /**
+       * Set the max bytes of parsed class information kept in memory for later
+       * checks in the same JVM. This is for long-lived processes that run many
+       * checks, such as build tool workers. The memory is shared by all checks
+       * in the JVM with this set, keyed like the cache directory, and when
+       * over the max the least recently used classpath entries are dropped.
+       * Default is 0, meaning none is kept.
+       */
+      public Builder setMemoryCacheSize(long memoryCacheSize) {
+        if (memoryCacheSize < 0) {
+          throw new IllegalArgumentException("Memory cache size cannot be negative");
+        }
+        this.memoryCacheSize = memoryCacheSize;
+        return this;
+      }
+
+      /**
+       * Set whether stats of each check, such as the time of each phase and
+       * the number of classes parsed, are collected for
+       * {@link #getLastStats()}. When false, the counters are not updated at
+       * all. Default is false.
+       */
+      public Builder setStatsEnabled(boolean statsEnabled) {
+        this.statsEnabled = statsEnabled;
+        return this;
+      }
+
+      /**
+       * Set the max number of classes kept loaded during a check, to bound
+       * its memory on large classpaths. Between the analysis of each class,
+       * if more than the max are loaded, the least recently used are evicted
+       * down to three quarters of the max. Only the results of their processed
+       * methods are kept, and a class that is needed again is parsed again
+       * with those results put back, so the results are the same as without a
+       * max. Workflow classes are evicted as soon as they are checked, and
+       * standard library classes from the bundled index are never evicted.
+       * When threads is greater than 1, classes are parsed in parallel a
+       * quarter of the max at a time instead of all up front. Default is 0,
+       * meaning there is no max and nothing is evicted.
+       */
+      public Builder setMaxLoadedClasses(int maxLoadedClasses) {
+        if (maxLoadedClasses < 0) {
+          throw new IllegalArgumentException("Max loaded classes cannot be negative");
+        }
+        this.maxLoadedClasses = maxLoadedClasses;
+        return this;
+      }
+
+      /** Build the options. */
+      public Options build() {
+        return new Options(this);
+      }
+    }
+  }
+
+  /** Listener for the classes found by a check. */
+  @FunctionalInterface
+  public interface Listener {
+    /**
+     * Called with each class that has at least one method whose
+     * {@link ClassInfo.MethodInfo#getWorkflowImpl()} is non-null, once every
+     * such method is checked. This is called on the thread running the check.
+     * When {@link Options.Builder#setMaxLoadedClasses(int)} is set, the class
+     * is already trimmed to its important methods and is not kept by the
+     * check after this, so the listener decides whether it is retained.
+     * Otherwise every loaded class is kept until the check completes.
+     */
+    void onWorkflowClass(ClassInfo classInfo);
+  }
+
   private final Config config;
+  private final Options options;
+  // Set by the daemon to keep parsed classes in memory across checks
+  @Nullable
+  ClassInfoCache.Memory cacheMemory;
+  @Nullable
+  private volatile CheckStats lastStats;
 
-  /** Create a new workflow check with the given config. */
+  /** Create a new workflow check with the given config and default options. */
   public WorkflowCheck(Config config) {
+    this(config, Options.getDefaultInstance());
+  }
+
+  /** Create a new workflow check with the given config and options. */
+  public WorkflowCheck(Config config, Options options) {
     this.config = config;
+    this.options = options;
+  }
+
+  /**
+   * Stats of the last check run by this instance, or null if stats are not
+   * enabled in the options or no check has run.
+   */
+  @Nullable
+  public CheckStats getLastStats() {
+    return lastStats;
   }
 
   /**
@@ -64,11 +341,115 @@ public class WorkflowCheck {
    * is non-null.
    */
   public List<ClassInfo> findWorkflowClasses(String... classPaths) throws IOException {
-    // Load all non-built-in classes' methods to find workflow impls
+    return findWorkflowClasses(Arrays.asList(classPaths));
+  }
+
+  /**
+   * Scan the given scan classpaths finding all classes with workflow
+   * implementation methods, and check them for validity. Unlike
+   * {@link #findWorkflowClasses(String...)}, classes in the other classpaths
+   * are not scanned, and are only parsed if a scanned class reaches them (e.g.
+   * through its hierarchy or calls). This is usually used with the project's
+   * own classes to scan and its dependencies as the other classpaths. Scan
+   * classpath entries come first in the resulting classpath, and entries in
+   * the other classpaths that are also scanned are ignored.
+   */
+  public List<ClassInfo> findWorkflowClasses(List<String> scanClassPaths, String... classPaths) throws IOException {
     var workflowClasses = new ArrayList<ClassInfo>();
-    try (var classPath = new ClassPath(classPaths)) {
-      var loader = new Loader(config, classPath);
-      for (String className : classPath.classes) {
+    findWorkflowClasses(workflowClasses::add, scanClassPaths, classPaths);
+    // Now that we have processed all invalidity on each class, trim off
+    // unimportant class pieces
+    trimUnimportantClassInfo(workflowClasses);
+    return workflowClasses;
+  }
+
+  /**
+   * Like {@link #findWorkflowClasses(List, String...)}, but each class is
+   * given to the listener as soon as its check is complete instead of all
+   * being returned at the end. Classes are given in class-name order, the
+   * same order as the returned list, so results can be shown as they come
+   * without reordering.
+   */
+  public void findWorkflowClasses(
+          Listener listener, List<String> scanClassPaths, String... classPaths) throws IOException {
+    // Load all scanned non-built-in classes' methods to find workflow impls
+    var analyzedWorkflowClasses = new ArrayList<ClassInfo>();
+    var reusedWorkflowClasses = new ArrayList<ClassInfo>();
+    var stats = newStats();
+    try (var classPath = new ClassPath(scanClassPaths.toArray(new String[0]), classPaths)) {
+      var cache = newClassInfoCache();
+      var loader = newLoader(classPath, cache);
+      if (stats != null) {
+        stats.classesEnumerated = classPath.classes.size();
+        loader.collectStats(stats);
+        stats.endPhase("enumerate classpath");
+      }
+
+      // For incremental checks, only analyze classes affected by changes since
+      // the previous state and reuse the rest of its results
+      var classNames = classPath.classes;
+      byte[] stateKey = null;
+      Map<String, Long> classHashes = null;
+      IncrementalState previousState = null;
+      Set<String> affectedClasses = null;
+      if (options.incrementalStateFile != null) {
+        loader.trackDependencies();
+        stateKey = IncrementalState.key(config, options);
+        previousState = IncrementalState.load(options.incrementalStateFile, stateKey);
+        classHashes = IncrementalState.hashClasses(classPath, previousState);
+        if (previousState != null) {
+          affectedClasses = previousState.affectedClasses(classHashes);
+          classNames = new ArrayList<>();
+          for (var className : classPath.classes) {
+            if (affectedClasses.contains(className)) {
+              classNames.add(className);
+            }
+          }
+          for (var info : previousState.workflowClasses) {
+            if (!affectedClasses.contains(info.name)) {
+              reusedWorkflowClasses.add(info);
+            }
+          }
+          reusedWorkflowClasses.sort(Comparator.comparing(c -> c.name));
+          logger.log(System.Logger.Level.INFO, "Incremental check analyzing {0} of {1} class(es)",
+                  classNames.size(), classPath.classes.size());
+        }
+        if (stats != null) {
+          stats.endPhase("incremental state");
+        }
+      }
+      var nextReusedWorkflowClass = 0;
+
+      // Only fully parse classes whose headers show they may have a workflow
+      // impl, which is usually a small part of the classpath
+      var candidateClassNames = new ArrayList<String>();
+      for (var className : classNames) {
+        if (loader.mayHaveWorkflowImpl(className)) {
+          candidateClassNames.add(className);
+        }
+      }
+      logger.log(System.Logger.Level.DEBUG, "Prefilter kept {0} of {1} class(es) to check for workflow impls",
+              candidateClassNames.size(), classNames.size());
+      classNames = candidateClassNames;
+      if (stats != null) {
+        stats.endPhase("prefilter");
+      }
+
+      // Parsing has no cross-class dependencies, so it can be done in parallel
+      // up front. The analysis below remains sequential and in class-name
+      // order so results do not depend on the thread count.
+      var parseAhead = parseAhead(classNames);
+      if (options.threads > 1 && parseAhead == classNames.size()) {
+        loader.loadClasses(classNames, options.threads);
+        if (stats != null) {
+          stats.endPhase("parallel parse");
+        }
+      }
+      for (var i = 0; i < classNames.size(); i++) {
+        var className = classNames.get(i);
+        if (options.threads > 1 && parseAhead < classNames.size() && i % parseAhead == 0) {
+          loader.loadClasses(classNames.subList(i, Math.min(i + parseAhead, classNames.size())), options.threads);
+        }
         var info = loader.loadClass(className);
         var hasWorkflowImpl = false;
         for (var methodEntry : info.methods.entrySet()) {
@@ -83,55 +464,254 @@ public class WorkflowCheck {
               // We need to check for method validity only if it's an impl
               if (method.workflowImpl != null) {
                 hasWorkflowImpl = true;
-                loader.processMethodValidity(method, Collections.newSetFromMap(new IdentityHashMap<>()));
+                loader.processMethodValidity(info, method);
               }
             }
           }
         }
+        // Classes are analyzed in class-name order, so the reused ones before
+        // this one are given first to keep the order
         if (hasWorkflowImpl) {
-          workflowClasses.add(info);
+          while (nextReusedWorkflowClass < reusedWorkflowClasses.size() &&
+                  reusedWorkflowClasses.get(nextReusedWorkflowClass).name.compareTo(info.name) < 0) {
+            giveToListener(listener, reusedWorkflowClasses.get(nextReusedWorkflowClass++), stats);
+          }
+          // When bounded, the class is not kept in the loader once given, so
+          // it is trimmed. It is only kept after this if needed for the
+          // incremental state.
+          loader.evictWorkflowClass(info);
+          giveToListener(listener, info, stats);
+          if (options.incrementalStateFile != null) {
+            analyzedWorkflowClasses.add(info);
+          }
         }
+        loader.evictClasses();
+      }
+      while (nextReusedWorkflowClass < reusedWorkflowClasses.size()) {
+        giveToListener(listener, reusedWorkflowClasses.get(nextReusedWorkflowClass++), stats);
+      }
+      if (stats != null) {
+        stats.endPhase("analyze");
+      }
+      if (cache != null) {
+        cache.save();
+      }
+
+      if (options.incrementalStateFile != null) {
+        // Now that we have processed all invalidity on each class, trim off
+        // unimportant class pieces (the reused ones are already trimmed)
+        trimUnimportantClassInfo(analyzedWorkflowClasses);
+        var dependents = IncrementalState.dependents(previousState,
+                affectedClasses == null ? Set.of() : affectedClasses, loader.dependencies());
+        IncrementalState.save(options.incrementalStateFile, stateKey,
+                IncrementalState.hashUsedClasses(classPath, classHashes, dependents), dependents,
+                concat(reusedWorkflowClasses, analyzedWorkflowClasses));
+      }
+      if (stats != null) {
+        stats.endPhase("save");
       }
     }
+  }
 
-    // Now that we have processed all invalidity on each class, trim off
-    // unimportant class pieces
-    var trimmed = Collections.<ClassInfo>newSetFromMap(new IdentityHashMap<>());
-    workflowClasses.forEach(info -> trimUnimportantClassInfo(info, trimmed));
+  // The time in the listener is timed on its own so it is not counted in the
+  // analysis
+  private static void giveToListener(Listener listener, ClassInfo info, @Nullable CheckStats stats) {
+    var start = stats == null ? 0 : System.nanoTime();
+    listener.onWorkflowClass(info);
+    if (stats != null) {
+      stats.addListenerTime(System.nanoTime() - start);
+    }
+  }
 
-    // Sort classes by class name and return
-    workflowClasses.sort(Comparator.comparing(c -> c.name));
-    return workflowClasses;
+  private static <T> List<T> concat(List<T> first, List<T> second) {
+    var list = new ArrayList<T>(first.size() + second.size());
+    list.addAll(first);
+    list.addAll(second);
+    return list;
   }
 
-  private void trimUnimportantClassInfo(ClassInfo info, Set<ClassInfo> done) {
-    done.add(info);
-    // Remove non-final static fields, they are only needed during processing
-    info.nonFinalStaticFields = null;
-    // Remove unimportant methods (i.e. without workflow info and are valid),
-    // and remove entire list if none left
-    info.methods.entrySet().removeIf(methods -> {
-      methods.getValue().removeIf(method -> {
-        // If the method has an impl and decl class not already trimmed, trim it
-        if (method.workflowImpl != null && !done.contains(method.workflowImpl.declClassInfo)) {
-          trimUnimportantClassInfo(method.workflowImpl.declClassInfo, done);
+  /**
+   * Analyze every public and protected method with a body on every class in
+   * the given packages and return the descriptor patterns and whether they are
+   * invalid. The result, when used as configuration with the
+   * <c>temporal.workflowcheck.invalid.</c> prefix, prevents these methods from
+   * having to be analyzed again.
+   * <p>
+   * Only methods that are not already configured and cannot be overridden
+   * (i.e. static, final, constructors, or on a final class) are included.
+   * Otherwise the setting would apply to overrides in subclasses, hiding their
+   * invalid calls if valid or making them invalid if invalid.
+   *
+   * @param packages Package prefixes, either with '/' or '.' separators.
+   * @param classPaths Classpath entries to analyze.
+   * @return Map of descriptor pattern to whether it is invalid, sorted by
+   *     descriptor pattern.
+   */
+  public SortedMap<String, Boolean> prebuildInvalidMembers(
+          List<String> packages, String... classPaths) throws IOException {
+    // Normalize packages to binary-name prefixes
+    var prefixes = new ArrayList<String>(packages.size());
+    for (var pkg : packages) {
+      var prefix = pkg.replace('.', '/');
+      prefixes.add(prefix.endsWith("/") ? prefix : prefix + "/");
+    }
+    var invalidMembers = new TreeMap<String, Boolean>();
+    var stats = newStats();
+    try (var classPath = new ClassPath(classPaths)) {
+      var cache = newClassInfoCache();
+      var loader = newLoader(classPath, cache);
+      if (stats != null) {
+        stats.classesEnumerated = classPath.classes.size();
+        loader.collectStats(stats);
+        stats.endPhase("enumerate classpath");
+      }
+      var classNames = new ArrayList<String>();
+      for (var className : classPath.classes) {
+        for (var prefix : prefixes) {
+          if (className.startsWith(prefix)) {
+            classNames.add(className);
+            break;
+          }
+        }
+      }
+      var parseAhead = parseAhead(classNames);
+      if (options.threads > 1 && parseAhead == classNames.size()) {
+        loader.loadClasses(classNames, options.threads);
+        if (stats != null) {
+          stats.endPhase("parallel parse");
         }
-        // Recursively trim classes on calls too for each not already done
-        if (method.invalidMemberAccesses != null) {
-          for (var access : method.invalidMemberAccesses) {
-            if (access.resolvedInvalidClass != null && !done.contains(access.resolvedInvalidClass)) {
-              trimUnimportantClassInfo(access.resolvedInvalidClass, done);
+      }
+      for (var i = 0; i < classNames.size(); i++) {
+        var className = classNames.get(i);
+        if (options.threads > 1 && parseAhead < classNames.size() && i % parseAhead == 0) {
+          loader.loadClasses(classNames.subList(i, Math.min(i + parseAhead, classNames.size())), options.threads);
+        }
+        var info = loader.loadClass(className);
+        for (var methodEntry : info.methods.entrySet()) {
+          for (var method : methodEntry.getValue()) {
+            // Only non-configured public/protected methods with bodies that
+            // cannot be overridden
+            if (method.configuredInvalid != null ||
+                    ((method.access & Opcodes.ACC_PUBLIC) == 0 && (method.access & Opcodes.ACC_PROTECTED) == 0) ||
+                    (method.access & Opcodes.ACC_ABSTRACT) != 0 ||
+                    (method.access & Opcodes.ACC_NATIVE) != 0 ||
+                    ((method.access & Opcodes.ACC_STATIC) == 0 &&
+                            (method.access & Opcodes.ACC_FINAL) == 0 &&
+                            (info.access & Opcodes.ACC_FINAL) == 0 &&
+                            !methodEntry.getKey().equals("<init>"))) {
+              continue;
             }
+            loader.processMethodValidity(method);
+            var invalid = method.isInvalid();
+            // Descriptor patterns do not have return types. Bridge methods can
+            // have the same args as what they bridge, so invalid wins.
+            var key = className + "." + methodEntry.getKey() +
+                    method.descriptor.substring(0, method.descriptor.indexOf(')') + 1);
+            invalidMembers.merge(key, invalid, Boolean::logicalOr);
           }
         }
-        // Set to remove if nothing important on it
-        return method.workflowDecl == null &&
-                method.workflowImpl == null &&
-                (method.configuredInvalid == null || method.configuredInvalid) &&
-                method.invalidMemberAccesses == null;
+        loader.evictClasses();
+      }
+      if (stats != null) {
+        stats.endPhase("analyze");
+      }
+      if (cache != null) {
+        cache.save();
+      }
+      if (stats != null) {
+        stats.endPhase("save");
+      }
+    }
+    return invalidMembers;
+  }
+
+  // Starts the stats of a new check if enabled
+  @Nullable
+  private CheckStats newStats() {
+    var stats = options.statsEnabled ? new CheckStats() : null;
+    lastStats = stats;
+    return stats;
+  }
+
+  @Nullable
+  private ClassInfoCache newClassInfoCache() throws IOException {
+    var memory = cacheMemory;
+    if (memory == null && options.memoryCacheSize > 0) {
+      memory = ClassInfoCache.Memory.shared(options.memoryCacheSize);
+    }
+    if (options.cacheDirectory == null && memory == null) {
+      return null;
+    }
+    return new ClassInfoCache(options.cacheDirectory, memory, config);
+  }
+
+  private Loader newLoader(ClassPath classPath, @Nullable ClassInfoCache cache) {
+    var loader = new Loader(config, classPath, cache, loadJdkIndex());
+    if (options.maxLoadedClasses > 0) {
+      loader.maxLoadedClasses(options.maxLoadedClasses);
+    }
+    return loader;
+  }
+
+  // Number of classes parsed in parallel at a time when threads is greater
+  // than 1. With a max of loaded classes, parsing all up front would exceed
+  // it, so only a quarter of the max is parsed at a time.
+  private int parseAhead(List<String> classNames) {
+    if (options.maxLoadedClasses > 0) {
+      return Math.min(classNames.size(), Math.max(1, options.maxLoadedClasses / 4));
+    }
+    return classNames.size();
+  }
+
+  private JdkIndex loadJdkIndex() {
+    if (!options.jdkIndexEnabled) {
+      return null;
+    }
+    var index = JdkIndex.load(options.jdkVersion);
+    if (index == null || !index.isCompatible(config)) {
+      return null;
+    }
+    return index;
+  }
+
+  private void trimUnimportantClassInfo(List<ClassInfo> workflowClasses) {
+    // Trim each class reachable from the workflow classes once, using a queue
+    // instead of recursion since invalid call chains can be long
+    var done = Collections.<ClassInfo>newSetFromMap(new IdentityHashMap<>());
+    var pending = new ArrayDeque<ClassInfo>();
+    for (var info : workflowClasses) {
+      if (done.add(info)) {
+        pending.add(info);
+      }
+    }
+    while (!pending.isEmpty()) {
+      var info = pending.poll();
+      // Remove non-final static fields and the hierarchy, they are only needed
+      // during processing
+      info.nonFinalStaticFields = null;
+      info.hierarchy = null;
+      // Remove unimportant methods (i.e. without workflow info and are valid),
+      // and remove entire list if none left
+      info.methods.entrySet().removeIf(methods -> {
+        methods.getValue().removeIf(method -> {
+          // If the method has an impl and decl class not already trimmed, trim it
+          if (method.workflowImpl != null && done.add(method.workflowImpl.declClassInfo)) {
+            pending.add(method.workflowImpl.declClassInfo);
+          }
+          // Trim classes on calls too for each not already done
+          if (method.invalidMemberAccesses != null) {
+            for (var access : method.invalidMemberAccesses) {
+              if (access.resolvedInvalidClass != null && done.add(access.resolvedInvalidClass)) {
+                pending.add(access.resolvedInvalidClass);
+              }
+            }
+          }
+          // Set to remove if nothing important on it
+          return method.isUnimportant();
+        });
+        return methods.getValue().isEmpty();
       });
-      return methods.getValue().isEmpty();
-    });
+    }
   }
 
 }
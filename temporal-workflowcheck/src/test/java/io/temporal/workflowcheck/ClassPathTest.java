@@ -3,6 +3,9 @@ package io.temporal.workflowcheck;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -12,6 +15,57 @@ public class ClassPathTest {
     // We need to test a file-based classpath and a JAR based one (including
     // built-in classes) and confirm all loaded properly. We have confirmed
     // with Gradle tests that we have the proper pieces, but we assert again.
+    var entries = testEntries();
+    var testClassDirEntry = entries[0];
+    var asmJarEntry = entries[1];
+
+    // Now use these to load all classes and confirm it has the proper ones
+    // present
+    try (var classPath = new ClassPath(testClassDirEntry + File.pathSeparator + asmJarEntry)) {
+      assertTrue(classPath.classes.contains("io/temporal/workflowcheck/testdata/BadCalls$BadCallsImpl"));
+      assertTrue(classPath.classes.contains("org/objectweb/asm/ClassReader"));
+
+      // Confirm reading directly from the directory and the JAR gives the
+      // same bytes as the class loader, reusing the buffer
+      var bytes = new ClassPath.ClassBytes();
+      for (var className : List.of("io/temporal/workflowcheck/testdata/BadCalls$BadCallsImpl",
+              "org/objectweb/asm/ClassReader", "org/objectweb/asm/Opcodes")) {
+        assertTrue(classPath.readClass(className, bytes));
+        try (var is = classPath.classLoader.getResourceAsStream(className + ".class")) {
+          assertArrayEquals(Objects.requireNonNull(is).readAllBytes(), Arrays.copyOf(bytes.bytes, bytes.length));
+        }
+      }
+      // Standard library classes are not in an entry
+      assertFalse(classPath.readClass("java/lang/String", bytes));
+    }
+  }
+
+  @Test
+  public void testScanClassPath() throws Exception {
+    var entries = testEntries();
+    var testClassDirEntry = entries[0];
+    var asmJarEntry = entries[1];
+
+    // Only the scanned directory is listed, the JAR (and the directory again)
+    // are only looked up
+    try (var classPath = new ClassPath(new String[]{testClassDirEntry},
+            new String[]{asmJarEntry + File.pathSeparator + testClassDirEntry})) {
+      assertEquals(2, classPath.entries.size());
+      assertTrue(classPath.classes.contains("io/temporal/workflowcheck/testdata/BadCalls$BadCallsImpl"));
+      assertFalse(classPath.classes.contains("org/objectweb/asm/ClassReader"));
+      assertNull(classPath.entries.get(1).classes);
+
+      assertSame(classPath.entries.get(0), classPath.entry("io/temporal/workflowcheck/testdata/BadCalls$BadCallsImpl"));
+      assertSame(classPath.entries.get(1), classPath.entry("org/objectweb/asm/ClassReader"));
+      var bytes = new ClassPath.ClassBytes();
+      assertTrue(classPath.readClass("org/objectweb/asm/ClassReader", bytes));
+      assertNull(classPath.entry("org/objectweb/asm/DoesNotExist"));
+      assertNull(classPath.entry("java/lang/String"));
+    }
+  }
+
+  // Test class directory and ASM JAR from the test classpath
+  private static String[] testEntries() throws Exception {
     String testClassDirEntry = null;
     String asmJarEntry = null;
     for (var maybeEntry : System.getProperty("java.class.path").split(File.pathSeparator)) {
@@ -29,12 +83,6 @@ public class ClassPathTest {
     }
     assertNotNull(testClassDirEntry);
     assertNotNull(asmJarEntry);
-
-    // Now use these to load all classes and confirm it has the proper ones
-    // present
-    try (var classPath = new ClassPath(testClassDirEntry + File.pathSeparator + asmJarEntry)) {
-      assertTrue(classPath.classes.contains("io/temporal/workflowcheck/testdata/BadCalls$BadCallsImpl"));
-      assertTrue(classPath.classes.contains("org/objectweb/asm/ClassReader"));
-    }
+    return new String[]{testClassDirEntry, asmJarEntry};
   }
 }
@@ -0,0 +1,65 @@
+package io.temporal.workflowcheck;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DaemonTest {
+  @Test
+  public void testDaemonMatchesInProcess(@TempDir Path tempDir) throws Exception {
+    var socketFile = tempDir.resolve("workflowcheck.sock");
+    var daemonError = new AtomicReference<Throwable>();
+    var daemonThread = new Thread(() -> {
+      try {
+        new Daemon(socketFile, Duration.ofMinutes(1), 64L * 1024 * 1024).run();
+      } catch (Throwable e) {
+        daemonError.set(e);
+      }
+    });
+    daemonThread.start();
+    try {
+      // Wait for the daemon to listen
+      var deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+      while (!Files.exists(socketFile) && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      assertTrue(Files.exists(socketFile));
+
+      var args = new String[]{"--show-valid", System.getProperty("java.class.path")};
+      var inProcess = runCheck(args);
+      // Once to populate the memory, once to use it
+      var daemonArgs = new String[]{"--show-valid", "--daemon", socketFile.toString(), args[1]};
+      var cold = runCheck(daemonArgs);
+      var warm = runCheck(daemonArgs);
+      assertEquals(inProcess, cold);
+      assertEquals(inProcess, warm);
+    } finally {
+      Daemon.send(socketFile, Daemon.COMMAND_STOP, new String[0], System.out, System.err);
+      daemonThread.join();
+    }
+    assertNull(daemonError.get());
+    assertFalse(Files.exists(socketFile));
+  }
+
+  // Returns the exit code followed by the stdout
+  private static String runCheck(String[] args) throws IOException {
+    var out = new ByteArrayOutputStream();
+    var err = new ByteArrayOutputStream();
+    var exitCode = Main.check(args,
+            new PrintStream(out, true, StandardCharsets.UTF_8),
+            new PrintStream(err, true, StandardCharsets.UTF_8),
+            null);
+    assertFalse(err.toString(StandardCharsets.UTF_8).contains("No daemon listening"));
+    return exitCode + "\n" + out.toString(StandardCharsets.UTF_8);
+  }
+}
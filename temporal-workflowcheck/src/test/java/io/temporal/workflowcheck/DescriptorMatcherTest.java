@@ -0,0 +1,52 @@
+package io.temporal.workflowcheck;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DescriptorMatcherTest {
+  @Test
+  public void testPrecedence() {
+    var matcher = new DescriptorMatcher(Map.ofEntries(
+            Map.entry("a/b/C.m(I)", true),
+            Map.entry("a/b/C.m", false),
+            Map.entry("C.n(J)", true),
+            Map.entry("C.n", false),
+            Map.entry("o(Z)", true),
+            Map.entry("o", false),
+            Map.entry("D", true),
+            Map.entry("a/b/E", false),
+            Map.entry("a/b", true),
+            Map.entry("a", false),
+            Map.entry("", true)));
+
+    // Qualified class and member, with descriptor sans return preferred
+    assertEquals(true, matcher.check("a/b/C", "m", "(I)V"));
+    assertEquals(false, matcher.check("a/b/C", "m", "(J)V"));
+    assertEquals(false, matcher.check("a/b/C", "m", null));
+    // Unqualified class and member
+    assertEquals(true, matcher.check("x/C", "n", "(J)Ljava/lang/String;"));
+    assertEquals(false, matcher.check("x/C", "n", "(I)V"));
+    // Just member
+    assertEquals(true, matcher.check("x/Y", "o", "(Z)V"));
+    assertEquals(false, matcher.check("x/Y", "o", null));
+    // Unqualified class before packages
+    assertEquals(true, matcher.check("a/D", "p", "()V"));
+    // Qualified class, then longest package first
+    assertEquals(false, matcher.check("a/b/E", "p", null));
+    assertEquals(true, matcher.check("a/b/F", null, null));
+    assertEquals(false, matcher.check("a/c/F", "p", "()V"));
+    // Leading slash reaches the empty package
+    assertEquals(true, matcher.check("/z/F", null, null));
+    assertNull(matcher.check("z/F", "p", "()V"));
+
+    // Positive matches
+    var suppressions = new DescriptorMatcher(new String[]{"C.m", "q"});
+    assertEquals(true, suppressions.check("a/b/C", "m", "()V"));
+    assertEquals(true, suppressions.check("z/Z", "q", null));
+    assertNull(suppressions.check("a/b/C", "n", "()V"));
+    assertNull(new DescriptorMatcher(new String[0]).check("a/b/C", "m", "()V"));
+  }
+}
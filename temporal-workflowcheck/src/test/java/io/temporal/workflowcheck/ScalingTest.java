@@ -0,0 +1,66 @@
+package io.temporal.workflowcheck;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Scaling tests on synthetic classpaths of growing size. These are slow, so
+ * they are only run by the scalingTest task.
+ */
+@Tag("scaling")
+public class ScalingTest {
+  // Max ratio of the time per class on the largest classpath to the time per
+  // class on the smallest before the scaling is considered super-linear
+  private static final double MAX_TIME_PER_CLASS_RATIO = 3;
+
+  @Test
+  public void testFindWorkflowClassesScaling(@TempDir Path tempDir) throws IOException {
+    var sizes = System.getProperty("workflowcheck.scaling.sizes", "2000,4000,8000,16000,32000").split(",");
+    var config = Config.fromProperties(Config.defaultProperties());
+    // Warm up on the smallest classpath first so the JIT does not count
+    // against it
+    check(config, tempDir, Integer.parseInt(sizes[0]));
+
+    System.out.printf("%10s %10s %12s %12s %14s%n", "classes", "time ms", "us/class", "peak heap MB", "classes parsed");
+    double firstTimePerClass = 0;
+    double lastTimePerClass = 0;
+    for (var i = 0; i < sizes.length; i++) {
+      var result = check(config, tempDir, Integer.parseInt(sizes[i]));
+      var timePerClass = result.nanos / 1000.0 / result.classes;
+      System.out.printf("%10d %10d %12.1f %12d %14d%n", result.classes, result.nanos / 1_000_000,
+              timePerClass, result.stats.getPeakHeapBytes() / (1024 * 1024), result.stats.getClassesParsed());
+      if (i == 0) {
+        firstTimePerClass = timePerClass;
+      }
+      lastTimePerClass = timePerClass;
+    }
+    assertTrue(lastTimePerClass <= firstTimePerClass * MAX_TIME_PER_CLASS_RATIO,
+            "Time per class grew from " + firstTimePerClass + "us to " + lastTimePerClass + "us, scaling is super-linear");
+  }
+
+  private static Result check(Config config, Path tempDir, int classes) throws IOException {
+    var generator = new SyntheticClassPath();
+    generator.classes = classes;
+    var jar = tempDir.resolve("synthetic-" + classes + ".jar");
+    generator.writeJar(jar);
+
+    // Collect what earlier checks left behind so it does not count toward the
+    // peak heap
+    System.gc();
+    var check = new WorkflowCheck(config, WorkflowCheck.Options.newBuilder().setStatsEnabled(true).build());
+    var start = System.nanoTime();
+    var infos = check.findWorkflowClasses(jar.toString());
+    var nanos = System.nanoTime() - start;
+
+    assertEquals(generator.workflowCount(), infos.size());
+    return new Result(classes, nanos, check.getLastStats());
+  }
+
+  private record Result(int classes, long nanos, CheckStats stats) {}
+}
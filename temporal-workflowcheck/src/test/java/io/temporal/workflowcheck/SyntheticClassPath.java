@@ -0,0 +1,205 @@
+package io.temporal.workflowcheck;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generator of synthetic classpaths for scaling tests. Classes form superclass
+ * chains and implement marker interfaces. Each class has static methods that
+ * call static methods and inherited instance methods of other classes, mostly
+ * later classes but sometimes earlier ones, which creates recursion cycles.
+ * Some methods also call an invalid standard library method. Some classes are
+ * workflow impls of their own workflow interface, whose workflow method calls
+ * into the rest.
+ */
+class SyntheticClassPath {
+  // Number of regular classes
+  int classes = 1000;
+  // Number of classes in each superclass chain
+  int hierarchyDepth = 4;
+  // Number of marker interfaces each class implements
+  int interfaceFanOut = 2;
+  // Number of static methods on each class
+  int methodsPerClass = 4;
+  // Number of calls in each method
+  int callsPerMethod = 3;
+  // Fraction of calls to earlier classes
+  double recursionFraction = 0.05;
+  // Fraction of methods that call an invalid method
+  double invalidFraction = 0.01;
+  // Fraction of regular classes that a workflow impl is added for
+  double workflowFraction = 0.01;
+  long seed = 1;
+
+  int workflowCount() {
+    return Math.max(1, (int) (classes * workflowFraction));
+  }
+
+  int interfaceCount() {
+    return Math.max(interfaceFanOut, classes / 10);
+  }
+
+  /** Write the classes to a new JAR. */
+  void writeJar(Path jar) throws IOException {
+    var random = new Random(seed);
+    try (var out = new ZipOutputStream(Files.newOutputStream(jar))) {
+      for (var i = 0; i < interfaceCount(); i++) {
+        var writer = new ClassWriter(0);
+        writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT,
+                interfaceName(i), null, "java/lang/Object", null);
+        writer.visitEnd();
+        writeClass(out, interfaceName(i), writer);
+      }
+      for (var i = 0; i < classes; i++) {
+        writeClass(out, className(i), regularClass(i, random));
+      }
+      for (var i = 0; i < workflowCount(); i++) {
+        writeClass(out, workflowName(i), workflowInterface(i));
+        writeClass(out, workflowName(i) + "Impl", workflowImpl(i, random));
+      }
+    }
+  }
+
+  private static String className(int index) {
+    return "synthetic/p" + (index / 1000) + "/C" + index;
+  }
+
+  private static String interfaceName(int index) {
+    return "synthetic/markers/Marker" + index;
+  }
+
+  private static String workflowName(int index) {
+    return "synthetic/workflows/Workflow" + index;
+  }
+
+  // Whether the class is the first of a superclass chain, which declares the
+  // instance method the others inherit
+  private boolean isChainRoot(int index) {
+    return index % hierarchyDepth == 0;
+  }
+
+  private ClassWriter regularClass(int index, Random random) {
+    var superName = isChainRoot(index) ? "java/lang/Object" : className(index - 1);
+    var interfaces = new String[Math.min(interfaceFanOut, interfaceCount())];
+    var firstInterface = random.nextInt(interfaceCount());
+    for (var i = 0; i < interfaces.length; i++) {
+      interfaces[i] = interfaceName((firstInterface + i) % interfaceCount());
+    }
+    var writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC, className(index), null, superName, interfaces);
+    writer.visitSource("C" + index + ".java", null);
+
+    var init = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+    init.visitCode();
+    init.visitVarInsn(Opcodes.ALOAD, 0);
+    init.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+    init.visitInsn(Opcodes.RETURN);
+    init.visitMaxs(0, 0);
+    init.visitEnd();
+
+    if (isChainRoot(index)) {
+      var method = writer.visitMethod(Opcodes.ACC_PUBLIC, "v", "(I)I", null, null);
+      method.visitCode();
+      method.visitVarInsn(Opcodes.ILOAD, 1);
+      method.visitMethodInsn(Opcodes.INVOKESTATIC, className(index), "s0", "(I)I", false);
+      method.visitInsn(Opcodes.IRETURN);
+      method.visitMaxs(0, 0);
+      method.visitEnd();
+    }
+
+    for (var i = 0; i < methodsPerClass; i++) {
+      var method = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "s" + i, "(I)I", null, null);
+      method.visitCode();
+      method.visitVarInsn(Opcodes.ILOAD, 0);
+      for (var j = 0; j < callsPerMethod; j++) {
+        visitCall(method, index, random);
+      }
+      if (random.nextDouble() < invalidFraction) {
+        method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/System", "currentTimeMillis", "()J", false);
+        method.visitInsn(Opcodes.POP2);
+      }
+      method.visitInsn(Opcodes.IRETURN);
+      method.visitMaxs(0, 0);
+      method.visitEnd();
+    }
+    writer.visitEnd();
+    return writer;
+  }
+
+  // Visit a call to a random class that takes the int on the stack and leaves
+  // an int on the stack
+  private void visitCall(MethodVisitor method, int fromIndex, Random random) {
+    int target;
+    if (fromIndex > 0 && (fromIndex == classes - 1 || random.nextDouble() < recursionFraction)) {
+      target = random.nextInt(fromIndex);
+    } else {
+      target = fromIndex + 1 + random.nextInt(classes - fromIndex - 1);
+    }
+    if (random.nextBoolean()) {
+      method.visitMethodInsn(Opcodes.INVOKESTATIC, className(target),
+              "s" + random.nextInt(methodsPerClass), "(I)I", false);
+    } else {
+      // Instance method inherited from the root of the target's chain
+      method.visitTypeInsn(Opcodes.NEW, className(target));
+      method.visitInsn(Opcodes.DUP);
+      method.visitMethodInsn(Opcodes.INVOKESPECIAL, className(target), "<init>", "()V", false);
+      method.visitInsn(Opcodes.SWAP);
+      method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, className(target), "v", "(I)I", false);
+    }
+  }
+
+  private ClassWriter workflowInterface(int index) {
+    var writer = new ClassWriter(0);
+    writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT,
+            workflowName(index), null, "java/lang/Object", null);
+    writer.visitAnnotation("Lio/temporal/workflow/WorkflowInterface;", true).visitEnd();
+    var method = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "run", "()V", null, null);
+    method.visitAnnotation("Lio/temporal/workflow/WorkflowMethod;", true).visitEnd();
+    method.visitEnd();
+    writer.visitEnd();
+    return writer;
+  }
+
+  private ClassWriter workflowImpl(int index, Random random) {
+    var name = workflowName(index) + "Impl";
+    var writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object",
+            new String[]{workflowName(index)});
+
+    var init = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+    init.visitCode();
+    init.visitVarInsn(Opcodes.ALOAD, 0);
+    init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+    init.visitInsn(Opcodes.RETURN);
+    init.visitMaxs(0, 0);
+    init.visitEnd();
+
+    var method = writer.visitMethod(Opcodes.ACC_PUBLIC, "run", "()V", null, null);
+    method.visitCode();
+    method.visitInsn(Opcodes.ICONST_0);
+    for (var i = 0; i < callsPerMethod; i++) {
+      method.visitMethodInsn(Opcodes.INVOKESTATIC, className(random.nextInt(classes)),
+              "s" + random.nextInt(methodsPerClass), "(I)I", false);
+    }
+    method.visitInsn(Opcodes.POP);
+    method.visitInsn(Opcodes.RETURN);
+    method.visitMaxs(0, 0);
+    method.visitEnd();
+    writer.visitEnd();
+    return writer;
+  }
+
+  private static void writeClass(ZipOutputStream out, String className, ClassWriter writer) throws IOException {
+    out.putNextEntry(new ZipEntry(className + ".class"));
+    out.write(writer.toByteArray());
+    out.closeEntry();
+  }
+}
@@ -1,21 +1,38 @@
 package io.temporal.workflowcheck;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 import javax.annotation.Nullable;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 public class WorkflowCheckTest {
   static {
@@ -41,13 +58,8 @@ public class WorkflowCheckTest {
 
   @Test
   public void testWorkflowCheck() throws IOException {
-    // Load properties
-    var configProps = new Properties();
-    try (var is = getClass().getResourceAsStream("testdata/workflowcheck.properties")) {
-      configProps.load(is);
-    }
     // Collect infos
-    var config = Config.fromProperties(Config.defaultProperties(), configProps);
+    var config = Config.fromProperties(Config.defaultProperties(), testConfigProperties());
     var infos = new WorkflowCheck(config).findWorkflowClasses(System.getProperty("java.class.path"));
     for (var info : infos) {
       for (var methods : info.methods.entrySet().stream().sorted(Map.Entry.comparingByKey()).toList()) {
@@ -85,6 +97,507 @@ public class WorkflowCheckTest {
     }
   }
 
+  @Test
+  public void testRecursionText() throws IOException {
+    var config = Config.fromProperties(Config.defaultProperties(), testConfigProperties());
+    var infos = new WorkflowCheck(config).findWorkflowClasses(System.getProperty("java.class.path"));
+    String text = null;
+    for (var info : infos) {
+      if (info.name.equals("io/temporal/workflowcheck/testdata/Recursion$RecursionImpl")) {
+        text = Printer.methodText(info, "doWorkflow", info.methods.get("doWorkflow").get(0));
+      }
+    }
+    // Calls back into a method already printed are expected, not errors
+    var impl = "io.temporal.workflowcheck.testdata.Recursion$RecursionImpl";
+    assertEquals(
+            "Workflow method " + impl + ".doWorkflow() (declared on io.temporal.workflowcheck.testdata.Recursion) " +
+            "has 2 invalid member accesses:\n" +
+            "  Recursion.java:20 invokes " + impl + ".isEven(int):\n" +
+            "    Method " + impl + ".isEven(int) has 1 invalid member access:\n" +
+            "      Recursion.java:36 invokes " + impl + ".isOdd(int):\n" +
+            "        Method " + impl + ".isOdd(int) has 2 invalid member accesses:\n" +
+            "          Recursion.java:41 invokes java.lang.System.nanoTime() which is configured as invalid\n" +
+            "          Recursion.java:44 invokes " + impl + ".isEven(int) (recursive, see above)\n" +
+            "  Recursion.java:29 invokes " + impl + ".ping(int):\n" +
+            "    Method " + impl + ".ping(int) has 1 invalid member access:\n" +
+            "      Recursion.java:49 invokes " + impl + ".pong(int):\n" +
+            "        Method " + impl + ".pong(int) has 2 invalid member accesses:\n" +
+            "          Recursion.java:55 invokes " + impl + ".ping(int) (recursive, see above)\n" +
+            "          Recursion.java:57 invokes java.lang.System.nanoTime() which is configured as invalid\n",
+            text);
+  }
+
+  // A way of running the check that must give the same results as a plain
+  // check, returning the results of each run
+  interface CheckVariant {
+    List<List<String>> run(Config config, String classPath, Path tempDir) throws IOException;
+  }
+
+  static Stream<Arguments> checkVariants() throws IOException {
+    var testConfig = Config.fromProperties(Config.defaultProperties(), testConfigProperties());
+    return Stream.of(
+            Arguments.of("parallel", testConfig, (CheckVariant) (config, classPath, tempDir) ->
+                    List.of(workflowMethodTexts(new WorkflowCheck(config, WorkflowCheck.Options.newBuilder().
+                            setThreads(4).build()).findWorkflowClasses(classPath)))),
+            Arguments.of("listener", testConfig, (CheckVariant) (config, classPath, tempDir) -> {
+              var listened = new ArrayList<ClassInfo>();
+              new WorkflowCheck(config).findWorkflowClasses(listened::add, List.of(classPath));
+              return List.of(workflowMethodTexts(listened));
+            }),
+            Arguments.of("max loaded classes", testConfig, (CheckVariant) (config, classPath, tempDir) -> {
+              // Small enough that classes are evicted and reloaded throughout,
+              // with and without parsing in parallel
+              var results = new ArrayList<List<String>>();
+              for (var threads : List.of(1, 4)) {
+                var check = new WorkflowCheck(config, WorkflowCheck.Options.newBuilder().
+                        setMaxLoadedClasses(20).setThreads(threads).setStatsEnabled(true).build());
+                results.add(workflowMethodTexts(check.findWorkflowClasses(classPath)));
+                assertTrue(check.getLastStats().getClassesEvicted() > 0);
+                assertTrue(check.getLastStats().getClassesReloaded() > 0);
+              }
+              return results;
+            }),
+            Arguments.of("cache", testConfig, (CheckVariant) (config, classPath, tempDir) -> {
+              // Once to populate, once to use. The bodies visited are cached
+              // too, so only those of uncached classes (i.e. the standard
+              // library's) are parsed again.
+              var options = WorkflowCheck.Options.newBuilder().
+                      setCacheDirectory(tempDir).setStatsEnabled(true).build();
+              var coldCheck = new WorkflowCheck(config, options);
+              var cold = workflowMethodTexts(coldCheck.findWorkflowClasses(classPath));
+              try (var files = Files.list(tempDir)) {
+                assertTrue(files.findAny().isPresent());
+              }
+              var warmCheck = new WorkflowCheck(config, options);
+              var warm = workflowMethodTexts(warmCheck.findWorkflowClasses(classPath));
+              assertTrue(warmCheck.getLastStats().getClassesFromCache() > 0);
+              assertTrue(warmCheck.getLastStats().getMethodBodiesParsed() <
+                      coldCheck.getLastStats().getMethodBodiesParsed());
+              return List.of(cold, warm);
+            }),
+            Arguments.of("incremental", testConfig, (CheckVariant) (config, classPath, tempDir) -> {
+              // Once without state, once with nothing changed
+              var options = WorkflowCheck.Options.newBuilder().
+                      setIncrementalStateFile(tempDir.resolve("workflowcheck.state")).build();
+              var initial = workflowMethodTexts(new WorkflowCheck(config, options).findWorkflowClasses(classPath));
+              assertTrue(Files.exists(tempDir.resolve("workflowcheck.state")));
+              var unchanged = workflowMethodTexts(new WorkflowCheck(config, options).findWorkflowClasses(classPath));
+              return List.of(initial, unchanged);
+            }),
+            Arguments.of("scan", testConfig, (CheckVariant) (config, classPath, tempDir) -> {
+              // Scan only the test classes, with the whole class path (which
+              // also has the test classes) as dependencies. Incremental state
+              // keeps the hashes of reached dependency classes.
+              var scan = List.of(testClassesDir().toString());
+              var scanned = workflowMethodTexts(new WorkflowCheck(config).findWorkflowClasses(scan, classPath));
+              var options = WorkflowCheck.Options.newBuilder().
+                      setIncrementalStateFile(tempDir.resolve("workflowcheck.state")).build();
+              var initial = workflowMethodTexts(new WorkflowCheck(config, options).
+                      findWorkflowClasses(scan, classPath));
+              var unchanged = workflowMethodTexts(new WorkflowCheck(config, options).
+                      findWorkflowClasses(scan, classPath));
+              return List.of(scanned, initial, unchanged);
+            }),
+            // The test config changes JDK settings, so the index only works
+            // without it
+            Arguments.of("no JDK index", Config.fromProperties(Config.defaultProperties()),
+                    (CheckVariant) (config, classPath, tempDir) -> {
+                      assumeTrue(JdkIndex.load(Runtime.version().feature()) != null,
+                              "No JDK index for this Java version");
+                      return List.of(workflowMethodTexts(new WorkflowCheck(config, WorkflowCheck.Options.newBuilder().
+                              setJdkIndexEnabled(false).build()).findWorkflowClasses(classPath)));
+                    }));
+  }
+
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("checkVariants")
+  public void testVariantMatchesPlainCheck(
+          String name, Config config, CheckVariant variant, @TempDir Path tempDir) throws IOException {
+    var classPath = System.getProperty("java.class.path");
+    var plain = workflowMethodTexts(new WorkflowCheck(config).findWorkflowClasses(classPath));
+    assertFalse(plain.isEmpty());
+    for (var result : variant.run(config, classPath, tempDir)) {
+      assertEquals(plain, result);
+    }
+  }
+
+  @Test
+  public void testListenerStreamsResults(@TempDir Path tempDir) throws IOException {
+    // Each class is given in class-name order as soon as it is checked, before
+    // the check saves its incremental state at the end
+    var config = Config.fromProperties(Config.defaultProperties(), testConfigProperties());
+    var stateFile = tempDir.resolve("workflowcheck.state");
+    var listened = new ArrayList<ClassInfo>();
+    var textsWhenGiven = new ArrayList<String>();
+    new WorkflowCheck(config, WorkflowCheck.Options.newBuilder().setIncrementalStateFile(stateFile).build()).
+            findWorkflowClasses(info -> {
+              assertFalse(Files.exists(stateFile));
+              if (!listened.isEmpty()) {
+                assertTrue(listened.get(listened.size() - 1).name.compareTo(info.name) < 0);
+              }
+              listened.add(info);
+              textsWhenGiven.addAll(workflowMethodTexts(List.of(info)));
+            }, List.of(System.getProperty("java.class.path")));
+    assertTrue(Files.exists(stateFile));
+    assertFalse(listened.isEmpty());
+    // Complete when given, nothing is changed after
+    assertEquals(textsWhenGiven, workflowMethodTexts(listened));
+  }
+
+  @Test
+  public void testListenerReleasesClassesWhenBounded() throws IOException {
+    var config = Config.fromProperties(Config.defaultProperties(), testConfigProperties());
+    for (var maxLoadedClasses : List.of(0, 100_000)) {
+      // Large enough that only the workflow classes are evicted when bounded
+      var check = new WorkflowCheck(config, WorkflowCheck.Options.newBuilder().
+              setMaxLoadedClasses(maxLoadedClasses).setStatsEnabled(true).build());
+      var listened = new ArrayList<ClassInfo>();
+      check.findWorkflowClasses(info -> {
+        // When bounded, the class is already released and trimmed to its
+        // results when given. When unbounded, nothing is released during the
+        // check.
+        assertEquals(maxLoadedClasses == 0, info.hierarchy != null);
+        var hasUnimportantMethods = false;
+        for (var methods : info.methods.values()) {
+          for (var method : methods) {
+            hasUnimportantMethods |= method.isUnimportant();
+          }
+        }
+        assertEquals(maxLoadedClasses == 0, hasUnimportantMethods);
+        listened.add(info);
+      }, List.of(System.getProperty("java.class.path")));
+      assertFalse(listened.isEmpty());
+      // Released workflow classes may still be reloaded if a later class
+      // reaches them
+      assertEquals(maxLoadedClasses == 0 ? 0 : listened.size(), check.getLastStats().getClassesEvicted());
+    }
+  }
+
+  @Test
+  public void testIncrementalChecksAddedClass(@TempDir Path tempDir) throws IOException {
+    // Copy the test data classes so they can be changed, and check a class path
+    // that has the copy in place of the test classes
+    var classesDir = tempDir.resolve("classes");
+    var testClassesDir = testClassesDir();
+    var testDataPackage = Path.of("io", "temporal", "workflowcheck", "testdata");
+    try (var files = Files.walk(testClassesDir.resolve(testDataPackage))) {
+      for (var file : files.toList()) {
+        var target = classesDir.resolve(testClassesDir.relativize(file));
+        if (Files.isDirectory(file)) {
+          Files.createDirectories(target);
+        } else {
+          Files.copy(file, target);
+        }
+      }
+    }
+    // Start without one of the workflow classes. Note, classes are still
+    // loaded from the test class path when resolving, so only which classes
+    // are checked can be changed here.
+    Files.move(classesDir.resolve(testDataPackage).resolve("Recursion$RecursionImpl.class"),
+            tempDir.resolve("Recursion$RecursionImpl.class"));
+    var classPath = new ArrayList<String>();
+    for (var entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+      classPath.add(Path.of(entry).equals(testClassesDir) ? classesDir.toString() : entry);
+    }
+    var classPathString = String.join(File.pathSeparator, classPath);
+
+    var config = Config.fromProperties(Config.defaultProperties(), testConfigProperties());
+    var options = WorkflowCheck.Options.newBuilder().
+            setIncrementalStateFile(tempDir.resolve("workflowcheck.state")).build();
+    var full = workflowMethodTexts(new WorkflowCheck(config).findWorkflowClasses(classPathString));
+    assertEquals(full, workflowMethodTexts(new WorkflowCheck(config, options).findWorkflowClasses(classPathString)));
+
+    // Add back a workflow class and confirm it is analyzed
+    Files.move(tempDir.resolve("Recursion$RecursionImpl.class"),
+            classesDir.resolve(testDataPackage).resolve("Recursion$RecursionImpl.class"));
+    var changedFull = workflowMethodTexts(new WorkflowCheck(config).findWorkflowClasses(classPathString));
+    assertNotEquals(full, changedFull);
+    var changed = workflowMethodTexts(new WorkflowCheck(config, options).findWorkflowClasses(classPathString));
+    assertEquals(changedFull, changed);
+  }
+
+  @Test
+  public void testPrefilter() throws IOException {
+    var config = Config.fromProperties(Config.defaultProperties(), testConfigProperties());
+    try (var classPath = new ClassPath(System.getProperty("java.class.path"))) {
+      var loader = new Loader(config, classPath, null, null);
+      // Workflow interfaces and their impls may have impls, others may not
+      assertTrue(loader.mayHaveWorkflowImpl("io/temporal/workflowcheck/testdata/BadCalls"));
+      assertTrue(loader.mayHaveWorkflowImpl("io/temporal/workflowcheck/testdata/BadCalls$BadCallsImpl"));
+      assertTrue(loader.mayHaveWorkflowImpl("io/temporal/workflowcheck/testdata/Recursion$RecursionImpl"));
+      assertFalse(loader.mayHaveWorkflowImpl("io/temporal/workflowcheck/WorkflowCheckTest"));
+      assertFalse(loader.mayHaveWorkflowImpl("org/objectweb/asm/ClassWriter"));
+      // Every class with a workflow impl is kept
+      var infos = new WorkflowCheck(config).findWorkflowClasses(System.getProperty("java.class.path"));
+      assertFalse(infos.isEmpty());
+      for (var info : infos) {
+        assertTrue(loader.mayHaveWorkflowImpl(info.name));
+      }
+    }
+  }
+
+  @Test
+  public void testLazyMethodBodies() throws IOException {
+    var config = Config.fromProperties(Config.defaultProperties(), testConfigProperties());
+    try (var classPath = new ClassPath(System.getProperty("java.class.path"))) {
+      var loader = new Loader(config, classPath, null, null);
+      // Loading only visits headers, so every body is pending
+      var info = loader.loadClass("io/temporal/workflowcheck/testdata/BadCalls$BadCallsImpl");
+      var method = info.methods.get("doWorkflow").get(0);
+      assertSame(info, method.bodyClass);
+      assertNull(method.memberAccesses);
+      assertTrue(info.pendingBodies > 1);
+      var otherInfo = loader.loadClass("io/temporal/workflowcheck/testdata/Recursion$RecursionImpl");
+      var otherPendingBodies = otherInfo.pendingBodies;
+      assertTrue(otherPendingBodies > 0);
+
+      // Processing visits every body of the class at once (and those of the
+      // classes it calls), but not those of unrelated classes
+      loader.processMethodValidity(info, method);
+      assertNull(method.bodyClass);
+      assertTrue(method.isInvalid());
+      assertEquals(0, info.pendingBodies);
+      for (var methods : info.methods.values()) {
+        for (var otherMethod : methods) {
+          assertNull(otherMethod.bodyClass);
+        }
+      }
+      assertEquals(otherPendingBodies, otherInfo.pendingBodies);
+    }
+  }
+
+  @Test
+  public void testStats() throws IOException {
+    var config = Config.fromProperties(Config.defaultProperties(), testConfigProperties());
+    var noStatsCheck = new WorkflowCheck(config);
+    var noStats = workflowMethodTexts(noStatsCheck.findWorkflowClasses(System.getProperty("java.class.path")));
+    assertNull(noStatsCheck.getLastStats());
+
+    var statsCheck = new WorkflowCheck(config, WorkflowCheck.Options.newBuilder().
+            setThreads(2).setStatsEnabled(true).build());
+    assertEquals(noStats, workflowMethodTexts(statsCheck.findWorkflowClasses(System.getProperty("java.class.path"))));
+    var stats = statsCheck.getLastStats();
+    assertNotNull(stats);
+    assertEquals(List.of("enumerate classpath", "prefilter", "parallel parse", "analyze", "save"),
+            List.copyOf(stats.getPhaseDurations().keySet()));
+    // Only part of the enumerated classes are parsed
+    assertTrue(stats.getClassesParsed() > 0);
+    assertTrue(stats.getClassesParsed() < stats.getClassesEnumerated());
+    assertTrue(stats.getBytesRead() > 0);
+    assertTrue(stats.getMethodBodiesParsed() > 0);
+    assertTrue(stats.getMethodsVisited() > 0);
+    assertTrue(stats.getCallSitesResolved() > 0);
+    assertTrue(stats.getHierarchiesBuilt() > 0);
+    assertTrue(stats.getPeakHeapBytes() > 0);
+    assertTrue(stats.toText().contains("classesParsed"));
+    assertTrue(stats.toJson().startsWith("{\"phaseNanos\":{\"enumerate classpath\":"));
+
+    // Time in the listener is its own and not part of the analysis, which is
+    // no slower than without a listener apart from noise
+    var analyzeWithoutListener = stats.getPhaseDurations().get("analyze");
+    var listenerCalls = new ArrayList<ClassInfo>();
+    statsCheck.findWorkflowClasses(info -> {
+      listenerCalls.add(info);
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    }, List.of(System.getProperty("java.class.path")));
+    stats = statsCheck.getLastStats();
+    assertNotNull(stats);
+    var listenerMinimum = Duration.ofMillis(50L * listenerCalls.size());
+    assertTrue(stats.getListenerDuration().compareTo(listenerMinimum) >= 0);
+    assertTrue(stats.getPhaseDurations().get("analyze").compareTo(
+            analyzeWithoutListener.plus(listenerMinimum.dividedBy(2))) < 0);
+  }
+
+  @Test
+  public void testJfrRecording(@TempDir Path tempDir) throws IOException {
+    var jfrFile = tempDir.resolve("check.jfr");
+    var exitCode = Main.check(new String[]{"--jfr", jfrFile.toString(), System.getProperty("java.class.path")},
+            new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8),
+            new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8));
+    assertEquals(1, exitCode);
+
+    // Collect the events of each type, and confirm a known invalid workflow
+    // method is recorded
+    var events = new HashMap<String, List<RecordedEvent>>();
+    for (var event : RecordingFile.readAllEvents(jfrFile)) {
+      events.computeIfAbsent(event.getEventType().getName(), k -> new ArrayList<>()).add(event);
+    }
+    assertFalse(events.getOrDefault("io.temporal.workflowcheck.EnumerateEntry", List.of()).isEmpty());
+    var loadClassEvents = events.getOrDefault("io.temporal.workflowcheck.LoadClass", List.of());
+    assertTrue(loadClassEvents.stream().anyMatch(event ->
+            "io/temporal/workflowcheck/testdata/BadCalls$BadCallsImpl".equals(event.getString("className")) &&
+                    event.getInt("bytes") > 0));
+    var validityEvents = events.getOrDefault("io.temporal.workflowcheck.ProcessMethodValidity", List.of());
+    assertTrue(validityEvents.stream().anyMatch(event ->
+            "io/temporal/workflowcheck/testdata/BadCalls$BadCallsImpl".equals(event.getString("className")) &&
+                    "doWorkflow".equals(event.getString("methodName")) &&
+                    event.getBoolean("invalid")));
+  }
+
+  @Test
+  public void testSarifOutput(@TempDir Path tempDir) throws IOException {
+    var configFile = tempDir.resolve("workflowcheck.properties");
+    try (var out = Files.newOutputStream(configFile)) {
+      testConfigProperties().store(out, null);
+    }
+    var sarifFile = tempDir.resolve("results.sarif");
+    var classPath = System.getProperty("java.class.path");
+    var exitCode = Main.check(
+            new String[]{"--config", configFile.toString(), "--format", "sarif", "--output", sarifFile.toString(),
+                    classPath},
+            new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8),
+            new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8));
+    assertEquals(1, exitCode);
+
+    // One result for each invalid access of each workflow method, or for the
+    // method itself if configured invalid
+    var config = Config.fromProperties(Config.defaultProperties(), testConfigProperties());
+    var expectedResults = 0;
+    for (var info : new WorkflowCheck(config).findWorkflowClasses(classPath)) {
+      for (var methods : info.methods.values()) {
+        for (var method : methods) {
+          if (method.workflowImpl != null && method.isInvalid()) {
+            expectedResults += method.invalidMemberAccesses == null ? 1 : method.invalidMemberAccesses.size();
+          }
+        }
+      }
+    }
+    var sarif = new ObjectMapper().readTree(sarifFile.toFile());
+    assertEquals("2.1.0", sarif.get("version").asText());
+    var results = sarif.get("runs").get(0).get("results");
+    assertEquals(expectedResults, results.size());
+
+    // A known call chain from the workflow method to the invalid call
+    JsonNode touchFile = null;
+    for (var result : results) {
+      if (result.get("message").get("text").asText().startsWith(
+              "Workflow method io.temporal.workflowcheck.testdata.BadCalls$BadCallsImpl.doWorkflow() ") &&
+              result.get("message").get("text").asText().contains(" invokes " +
+                      "io.temporal.workflowcheck.testdata.BadCalls$BadCallsImpl.touchFile()")) {
+        touchFile = result;
+      }
+    }
+    assertNotNull(touchFile);
+    assertEquals("invalid-method-call", touchFile.get("ruleId").asText());
+    var physicalLocation = touchFile.get("locations").get(0).get("physicalLocation");
+    assertEquals("io/temporal/workflowcheck/testdata/BadCalls.java",
+            physicalLocation.get("artifactLocation").get("uri").asText());
+    assertEquals("SRCROOT", physicalLocation.get("artifactLocation").get("uriBaseId").asText());
+    assertTrue(physicalLocation.get("region").get("startLine").asInt() > 0);
+    var steps = touchFile.get("codeFlows").get(0).get("threadFlows").get(0).get("locations");
+    assertTrue(steps.size() > 1);
+    assertTrue(steps.get(steps.size() - 1).get("location").get("message").get("text").asText().
+            endsWith("java.lang.System.currentTimeMillis() which is configured as invalid"));
+
+    // A code flow through recursion ends at the call back into the cycle
+    JsonNode ping = null;
+    for (var result : results) {
+      if (result.get("message").get("text").asText().contains(" invokes " +
+              "io.temporal.workflowcheck.testdata.Recursion$RecursionImpl.ping(int)")) {
+        ping = result;
+      }
+    }
+    assertNotNull(ping);
+    steps = ping.get("codeFlows").get(0).get("threadFlows").get(0).get("locations");
+    assertEquals(3, steps.size());
+    assertTrue(steps.get(2).get("location").get("message").get("text").asText().
+            endsWith("Recursion$RecursionImpl.ping(int) (recursive, see above)"));
+  }
+
+  @Test
+  public void testJdkIndexCompatibility() throws IOException {
+    var index = JdkIndex.load(Runtime.version().feature());
+    assumeTrue(index != null, "No JDK index for this Java version");
+    // Only config that cannot apply to the standard library keeps it usable
+    assertTrue(index.isCompatible(Config.fromProperties(Config.defaultProperties())));
+    assertFalse(index.isCompatible(Config.fromProperties(Config.defaultProperties(), testConfigProperties())));
+  }
+
+  @Test
+  public void testPrebuildInvalidMembers() throws IOException {
+    var config = Config.fromProperties(Config.defaultProperties(), testConfigProperties());
+    var prebuilt = new WorkflowCheck(config).prebuildInvalidMembers(
+            List.of("io.temporal.workflowcheck.testdata"), System.getProperty("java.class.path"));
+    // Invalid static method and valid constructor
+    assertEquals(true,
+            prebuilt.get("io/temporal/workflowcheck/testdata/separatepackage/SeparateClass.staticCurrentTime()"));
+    assertEquals(false, prebuilt.get("io/temporal/workflowcheck/testdata/BadCalls$BadCallsImpl.<init>()"));
+    // Overridable and private methods are not included
+    assertFalse(prebuilt.containsKey("io/temporal/workflowcheck/testdata/separatepackage/SeparateClass.currentTime()"));
+    assertFalse(prebuilt.containsKey("io/temporal/workflowcheck/testdata/BadCalls$BadCallsImpl.doWorkflow()"));
+    assertFalse(prebuilt.containsKey("io/temporal/workflowcheck/testdata/BadCalls$BadCallsImpl.currentInstant()"));
+
+    // Confirm the same workflow methods are invalid when using the prebuilt
+    // config
+    var prebuiltProps = new Properties();
+    prebuilt.forEach((k, v) -> prebuiltProps.setProperty("temporal.workflowcheck.invalid." + k, v.toString()));
+    var prebuiltConfig = Config.fromProperties(Config.defaultProperties(), testConfigProperties(), prebuiltProps);
+    assertEquals(
+            workflowMethodInvalidity(new WorkflowCheck(config).
+                    findWorkflowClasses(System.getProperty("java.class.path"))),
+            workflowMethodInvalidity(new WorkflowCheck(prebuiltConfig).
+                    findWorkflowClasses(System.getProperty("java.class.path"))));
+  }
+
+  @Test
+  public void testPrebuildKeepsValidOverrideOutsidePackage() throws IOException {
+    var config = Config.fromProperties(Config.defaultProperties(), testConfigProperties());
+    var prebuilt = new WorkflowCheck(config).prebuildInvalidMembers(
+            List.of("io.temporal.workflowcheck.testdata.separatepackage"), System.getProperty("java.class.path"));
+    var prebuiltProps = new Properties();
+    prebuilt.forEach((k, v) -> prebuiltProps.setProperty("temporal.workflowcheck.invalid." + k, v.toString()));
+    var prebuiltConfig = Config.fromProperties(Config.defaultProperties(), testConfigProperties(), prebuiltProps);
+    // The subclass overriding an invalid method of the prebuilt package validly
+    // is still valid
+    var invalidity = workflowMethodInvalidity(new WorkflowCheck(prebuiltConfig).
+            findWorkflowClasses(System.getProperty("java.class.path")));
+    assertEquals(false, invalidity.get("io/temporal/workflowcheck/testdata/Prebuilt$PrebuiltImpl.doWorkflow()V"));
+  }
+
+  private static Map<String, Boolean> workflowMethodInvalidity(List<ClassInfo> infos) {
+    var invalidity = new TreeMap<String, Boolean>();
+    for (var info : infos) {
+      for (var methods : info.methods.entrySet()) {
+        for (var method : methods.getValue()) {
+          if (method.workflowImpl != null) {
+            invalidity.put(info.name + "." + methods.getKey() + method.descriptor, method.isInvalid());
+          }
+        }
+      }
+    }
+    return invalidity;
+  }
+
+  private static Properties testConfigProperties() throws IOException {
+    var configProps = new Properties();
+    try (var is = WorkflowCheckTest.class.getResourceAsStream("testdata/workflowcheck.properties")) {
+      configProps.load(is);
+    }
+    return configProps;
+  }
+
+  private static Path testClassesDir() {
+    return Path.of(WorkflowCheckTest.class.getProtectionDomain().getCodeSource().getLocation().getPath());
+  }
+
+  private static List<String> workflowMethodTexts(List<ClassInfo> infos) {
+    var texts = new ArrayList<String>();
+    for (var info : infos) {
+      for (var methods : info.methods.entrySet().stream().sorted(Map.Entry.comparingByKey()).toList()) {
+        for (var method : methods.getValue()) {
+          if (method.workflowImpl != null) {
+            texts.add(Printer.methodText(info, methods.getKey(), method));
+          }
+        }
+      }
+    }
+    return texts;
+  }
+
   record SourceAssertions(
           List<InvalidMemberAccessAssertion> invalidAccesses,
           List<LogAssertion> logs) {
@@ -92,6 +605,8 @@ public class WorkflowCheckTest {
     private static final String[] SOURCE_FILES = new String[]{
             "io/temporal/workflowcheck/testdata/BadCalls.java",
             "io/temporal/workflowcheck/testdata/Configured.java",
+            "io/temporal/workflowcheck/testdata/Prebuilt.java",
+            "io/temporal/workflowcheck/testdata/Recursion.java",
             "io/temporal/workflowcheck/testdata/Suppression.java",
             "io/temporal/workflowcheck/testdata/UnsafeIteration.java"
     };
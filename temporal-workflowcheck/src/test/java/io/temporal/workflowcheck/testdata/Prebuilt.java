@@ -0,0 +1,26 @@
+package io.temporal.workflowcheck.testdata;
+
+import io.temporal.workflow.*;
+import io.temporal.workflowcheck.testdata.separatepackage.SeparateClass;
+
+@WorkflowInterface
+public interface Prebuilt {
+  @WorkflowMethod
+  void doWorkflow();
+
+  class PrebuiltImpl implements Prebuilt {
+    @Override
+    public void doWorkflow() {
+      // Valid override of an invalid method on a class in another package,
+      // which stays valid when that package is prebuilt
+      new ValidOverride().currentTime();
+    }
+  }
+
+  class ValidOverride extends SeparateClass {
+    @Override
+    public long currentTime() {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package io.temporal.workflowcheck.testdata;
+
+import io.temporal.workflow.*;
+
+@WorkflowInterface
+public interface Recursion {
+  @WorkflowMethod
+  void doWorkflow();
+
+  class RecursionImpl implements Recursion {
+    @Override
+    public void doWorkflow() {
+      // INVALID: Indirect invalid call via mutually recursive methods
+      //   * class: io/temporal/workflowcheck/testdata/Recursion$RecursionImpl
+      //   * method: doWorkflow()V
+      //   * accessedClass: io/temporal/workflowcheck/testdata/Recursion$RecursionImpl
+      //   * accessedMember: isEven(I)Z
+      //   * accessedCauseClass: io/temporal/workflowcheck/testdata/Recursion$RecursionImpl
+      //   * accessedCauseMethod: isOdd(I)Z
+      isEven(10);
+
+      // INVALID: Indirect invalid call via recursion that calls back first
+      //   * class: io/temporal/workflowcheck/testdata/Recursion$RecursionImpl
+      //   * method: doWorkflow()V
+      //   * accessedClass: io/temporal/workflowcheck/testdata/Recursion$RecursionImpl
+      //   * accessedMember: ping(I)V
+      //   * accessedCauseClass: io/temporal/workflowcheck/testdata/Recursion$RecursionImpl
+      //   * accessedCauseMethod: pong(I)V
+      ping(10);
+
+      // Recursion alone does not make a method invalid
+      countDown(10);
+    }
+
+    private boolean isEven(int n) {
+      return n == 0 || isOdd(n - 1);
+    }
+
+    private boolean isOdd(int n) {
+      if (n == 0) {
+        System.nanoTime();
+        return false;
+      }
+      return isEven(n - 1);
+    }
+
+    private void ping(int n) {
+      if (n > 0) {
+        pong(n - 1);
+      }
+    }
+
+    private void pong(int n) {
+      if (n > 0) {
+        ping(n - 1);
+      }
+      System.nanoTime();
+    }
+
+    private void countDown(int n) {
+      if (n > 0) {
+        countDown(n - 1);
+      }
+    }
+  }
+}
@@ -1,5 +1,11 @@
 package io.temporal.workflowcheck.testdata.separatepackage;
 
 public class SeparateClass {
+  public long currentTime() {
+    return System.currentTimeMillis();
+  }
 
+  public static long staticCurrentTime() {
+    return System.currentTimeMillis();
+  }
 }